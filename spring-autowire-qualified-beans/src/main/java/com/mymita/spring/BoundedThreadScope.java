@@ -0,0 +1,354 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.Scope;
+import org.springframework.context.support.SimpleThreadScope;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Thread-backed {@link Scope} like {@link SimpleThreadScope} which limits the number of scoped objects per thread (least recently used
+ * objects are evicted first) and their time to live. Evicted objects are destroyed: their destruction callbacks are collected and run in
+ * batches by a background thread, so the request thread doesn't pay for them. The background thread starts with the first pending
+ * callback and runs them every {@link #setDestructionIntervalMillis(long) interval} or as soon as a
+ * {@link #setDestructionBatchSize(int) batch} is complete.
+ *
+ * The scope isn't managed by the container when registered via {@link org.springframework.beans.factory.config.CustomScopeConfigurer}
+ * scopes map, call {@link #destroy()} on shutdown to destroy the objects still held by the threads and to run the pending callbacks.
+ * Objects evicted after {@link #destroy()} by threads still using the scope are destroyed in the evicting thread.
+ */
+public class BoundedThreadScope implements Scope, DisposableBean {
+
+  private static final class ScopedInstance {
+    final String name;
+    /** {@link Ticker#read()} at creation */
+    final long created;
+    /** <code>null</code> while the object is being created */
+    Object object;
+    Runnable destructionCallback;
+
+    ScopedInstance(final String name, final long created) {
+      this.name = name;
+      this.created = created;
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BoundedThreadScope.class);
+
+  /**
+   * Scoped objects of all live threads for {@link #destroy()}, a map is reclaimed with its thread. Each map is guarded by itself, only
+   * {@link #destroy()} accesses the map of another thread.
+   */
+  private final Set<Map<String, ScopedInstance>> threadScopes = Collections.newSetFromMap(new MapMaker().weakKeys()
+      .<Map<String, ScopedInstance>, Boolean> makeMap());
+
+  private final ThreadLocal<Map<String, ScopedInstance>> threadScope = new ThreadLocal<Map<String, ScopedInstance>>() {
+    @Override
+    protected Map<String, ScopedInstance> initialValue() {
+      // access order, eldest entry is the least recently used
+      final Map<String, ScopedInstance> scope = new LinkedHashMap<String, ScopedInstance>(16, 0.75f, true);
+      threadScopes.add(scope);
+      return scope;
+    }
+  };
+
+  private final ConcurrentLinkedQueue<ScopedInstance> pendingDestruction = new ConcurrentLinkedQueue<ScopedInstance>();
+
+  private final AtomicInteger pendingDestructionCount = new AtomicInteger();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  private final AtomicLong destructions = new AtomicLong();
+
+  private int maxSize = Integer.MAX_VALUE;
+
+  private long timeToLiveMillis;
+
+  private int destructionBatchSize = 32;
+
+  private long destructionIntervalMillis = 1000;
+
+  private Ticker ticker = Ticker.systemTicker();
+
+  private ScheduledExecutorService destructionExecutor;
+
+  /** guarded by <code>this</code> */
+  private boolean destroyed;
+
+  /**
+   * @param maxSize maximum number of scoped objects per thread
+   */
+  public void setMaxSize(final int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @param timeToLiveMillis time after creation a scoped object is evicted, <code>0</code> for no limit
+   */
+  public void setTimeToLiveMillis(final long timeToLiveMillis) {
+    this.timeToLiveMillis = timeToLiveMillis;
+  }
+
+  /**
+   * @param ticker time source of the {@link #setTimeToLiveMillis(long) time to live}, the system ticker by default
+   */
+  public void setTicker(final Ticker ticker) {
+    this.ticker = ticker;
+  }
+
+  /**
+   * @param destructionBatchSize number of pending destruction callbacks which triggers an immediate run in the background
+   */
+  public void setDestructionBatchSize(final int destructionBatchSize) {
+    this.destructionBatchSize = destructionBatchSize;
+  }
+
+  /**
+   * @param destructionIntervalMillis interval pending destruction callbacks are run in the background anyway
+   */
+  public void setDestructionIntervalMillis(final long destructionIntervalMillis) {
+    this.destructionIntervalMillis = destructionIntervalMillis;
+  }
+
+  @Override
+  public Object get(final String name, final ObjectFactory<?> objectFactory) {
+    final Map<String, ScopedInstance> scope = threadScope.get();
+    final ScopedInstance instance;
+    synchronized (scope) {
+      final ScopedInstance existing = scope.get(name);
+      if (existing != null && existing.object != null) {
+        if (timeToLiveMillis <= 0 || ticker.read() - existing.created < TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis)) {
+          hits.incrementAndGet();
+          return existing.object;
+        }
+        scope.remove(name);
+        evict(existing);
+      }
+      misses.incrementAndGet();
+      // register before creation, the destruction callback is registered while the object is created
+      instance = new ScopedInstance(name, ticker.read());
+      scope.put(name, instance);
+    }
+    Object object = null;
+    try {
+      object = objectFactory.getObject();
+    } finally {
+      synchronized (scope) {
+        if (object == null) {
+          scope.remove(name);
+        } else {
+          instance.object = object;
+          evictOverflow(scope);
+        }
+      }
+    }
+    return object;
+  }
+
+  private void evictOverflow(final Map<String, ScopedInstance> scope) {
+    for (final Iterator<ScopedInstance> it = scope.values().iterator(); it.hasNext() && scope.size() > maxSize;) {
+      final ScopedInstance instance = it.next();
+      // don't evict objects which are still being created (nested scoped beans)
+      if (instance.object != null) {
+        it.remove();
+        evict(instance);
+      }
+    }
+  }
+
+  private void evict(final ScopedInstance instance) {
+    evictions.incrementAndGet();
+    LOGGER.debug("Evict scoped object '{}'", instance.name);
+    if (instance.destructionCallback != null) {
+      pendingDestruction.add(instance);
+      pendingDestructionCount.incrementAndGet();
+      // the first pending callback starts the periodic run
+      final ScheduledExecutorService executor = destructionExecutor();
+      if (executor == null) {
+        // destroyed, no background thread anymore
+        runDestructionCallbacks();
+      } else if (pendingDestructionCount.get() >= destructionBatchSize) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            runDestructionCallbacks();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * @return the background executor, <code>null</code> if the scope is destroyed
+   */
+  private synchronized ScheduledExecutorService destructionExecutor() {
+    if (destructionExecutor == null && !destroyed) {
+      destructionExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+          final Thread thread = new Thread(r, "BoundedThreadScope-destruction");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      destructionExecutor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          runDestructionCallbacks();
+        }
+      }, destructionIntervalMillis, destructionIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    return destructionExecutor;
+  }
+
+  /**
+   * Run all pending destruction callbacks in the calling thread.
+   */
+  public void runDestructionCallbacks() {
+    ScopedInstance instance;
+    while ((instance = pendingDestruction.poll()) != null) {
+      pendingDestructionCount.decrementAndGet();
+      try {
+        instance.destructionCallback.run();
+        destructions.incrementAndGet();
+      } catch (final RuntimeException e) {
+        LOGGER.warn("Destruction callback for scoped object '" + instance.name + "' failed", e);
+      }
+    }
+  }
+
+  /**
+   * Evict all scoped objects of the current thread, e.g. at the end of a request of a pooled thread.
+   */
+  public void clear() {
+    final Map<String, ScopedInstance> scope = threadScope.get();
+    synchronized (scope) {
+      for (final ScopedInstance instance : removeAll(scope)) {
+        evict(instance);
+      }
+    }
+  }
+
+  /**
+   * Remove all objects of the given scope.
+   *
+   * @return the created objects, objects which are still being created are dropped
+   */
+  private static List<ScopedInstance> removeAll(final Map<String, ScopedInstance> scope) {
+    final List<ScopedInstance> result = new ArrayList<ScopedInstance>(scope.size());
+    for (final ScopedInstance instance : scope.values()) {
+      if (instance.object != null) {
+        result.add(instance);
+      }
+    }
+    scope.clear();
+    return result;
+  }
+
+  @Override
+  public Object remove(final String name) {
+    final Map<String, ScopedInstance> scope = threadScope.get();
+    final ScopedInstance instance;
+    synchronized (scope) {
+      instance = scope.remove(name);
+    }
+    return instance == null ? null : instance.object;
+  }
+
+  @Override
+  public void registerDestructionCallback(final String name, final Runnable callback) {
+    final Map<String, ScopedInstance> scope = threadScope.get();
+    synchronized (scope) {
+      final ScopedInstance instance = scope.get(name);
+      if (instance == null) {
+        LOGGER.warn("Can't register destruction callback for unknown scoped object '{}'", name);
+      } else {
+        instance.destructionCallback = callback;
+      }
+    }
+  }
+
+  @Override
+  public Object resolveContextualObject(final String key) {
+    return null;
+  }
+
+  @Override
+  public String getConversationId() {
+    return Thread.currentThread().getName();
+  }
+
+  /**
+   * Stop the background thread (waiting for running callbacks), destroy the objects still held by the threads and run the pending
+   * destruction callbacks in the calling thread.
+   */
+  @Override
+  public void destroy() throws InterruptedException {
+    final ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = destructionExecutor;
+      destructionExecutor = null;
+      destroyed = true;
+    }
+    if (executor != null) {
+      executor.shutdown();
+      executor.awaitTermination(destructionIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    for (final Map<String, ScopedInstance> scope : threadScopes) {
+      synchronized (scope) {
+        for (final ScopedInstance instance : removeAll(scope)) {
+          if (instance.destructionCallback != null) {
+            pendingDestruction.add(instance);
+            pendingDestructionCount.incrementAndGet();
+          }
+        }
+      }
+    }
+    runDestructionCallbacks();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  public long getDestructionCount() {
+    return destructions.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("BoundedThreadScope [hits=%s, misses=%s, evictions=%s, destructions=%s]", hits, misses, evictions,
+        destructions);
+  }
+}
@@ -0,0 +1,391 @@
+package com.mymita.spring;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.AopInfrastructureBean;
+import org.springframework.aop.scope.ScopedObject;
+import org.springframework.aop.scope.ScopedProxyFactoryBean;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.cglib.core.DefaultGeneratorStrategy;
+import org.springframework.cglib.core.DefaultNamingPolicy;
+import org.springframework.cglib.core.ReflectUtils;
+import org.springframework.cglib.proxy.Callback;
+import org.springframework.cglib.proxy.CallbackFilter;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.cglib.proxy.MethodProxy;
+import org.springframework.cglib.proxy.NoOp;
+import org.springframework.core.SpringVersion;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.MapMaker;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Replacement for {@link ScopedProxyFactoryBean} (same properties) which generates the CGLIB proxy class of a target class only once
+ * per JVM and reuses it for all application contexts, JDK proxies are cached by {@link Proxy} itself. The proxy delegates each call to
+ * the current target of the scope and implements {@link ScopedObject}.
+ *
+ * The proxies aren't Spring AOP proxies: they implement neither <code>SpringProxy</code> nor <code>Advised</code> (so
+ * <code>AopUtils</code> and auto proxy creators don't recognize them) and <code>equals</code>/<code>hashCode</code> are based on the
+ * identity of the proxy. Therefore the replacement is opt-in, see {@link QualifiedBeanFactoryConfigurer#setCachingScopedProxies(boolean)}.
+ *
+ * If the system property {@value #CACHE_DIRECTORY_PROPERTY} names a directory, the generated bytecode is stored there keyed by the
+ * hash of all inputs of the generation (the bytecode of the target class, the Spring/CGLIB version, the proxy interfaces, the callback
+ * layout and the class loader) and loaded on later starts instead of generating it again.
+ */
+public class CachingScopedProxyFactoryBean implements FactoryBean<Object>, BeanFactoryAware {
+
+  /**
+   * System property naming the directory of the bytecode cache.
+   */
+  public static final String CACHE_DIRECTORY_PROPERTY = "com.mymita.spring.scopedProxyCacheDir";
+
+  /** changes whenever the generated proxy classes change */
+  private static final String GENERATOR_VERSION = "2";
+
+  /** distinguishes the proxy class names from the classes generated by other enhancers */
+  private static final String NAMING_TAG = "ByCachingScopedProxy";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CachingScopedProxyFactoryBean.class);
+
+  private static final Class<?>[] PROXY_INTERFACES = {
+      ScopedObject.class, AopInfrastructureBean.class
+  };
+
+  private static final Class<?>[] CALLBACK_TYPES = {
+      MethodInterceptor.class, NoOp.class
+  };
+
+  private static final CallbackFilter CALLBACK_FILTER = new CallbackFilter() {
+    @Override
+    public int accept(final Method method) {
+      // don't delegate finalize of the proxy to the target
+      return method.getName().equals("finalize") && method.getParameterTypes().length == 0 ? 1 : 0;
+    }
+
+    @Override
+    public String toString() {
+      return "finalize=NoOp,*=MethodInterceptor";
+    }
+  };
+
+  private static final DefaultNamingPolicy NAMING_POLICY = new DefaultNamingPolicy() {
+    @Override
+    protected String getTag() {
+      return NAMING_TAG;
+    }
+  };
+
+  /** target class to proxy class, weak so that class loaders can be collected */
+  private static final ConcurrentMap<Class<?>, Class<?>> PROXY_CLASSES = new MapMaker().weakKeys().weakValues().makeMap();
+
+  private static final class BytecodeCapturingStrategy extends DefaultGeneratorStrategy {
+    byte[] bytecode;
+
+    @Override
+    protected byte[] transform(final byte[] b) {
+      this.bytecode = b;
+      return b;
+    }
+  }
+
+  /**
+   * Delegates all calls to the current target object of the scope.
+   */
+  private static final class TargetInvoker implements MethodInterceptor, InvocationHandler {
+
+    private final ConfigurableBeanFactory beanFactory;
+
+    private final String targetBeanName;
+
+    TargetInvoker(final ConfigurableBeanFactory beanFactory, final String targetBeanName) {
+      this.beanFactory = beanFactory;
+      this.targetBeanName = targetBeanName;
+    }
+
+    private Object handleScopedObject(final Method method) {
+      if (method.getName().equals("getTargetObject")) {
+        return beanFactory.getBean(targetBeanName);
+      }
+      beanFactory.destroyScopedBean(targetBeanName);
+      return null;
+    }
+
+    private Object resolveTarget() {
+      return beanFactory.getBean(targetBeanName);
+    }
+
+    private static Object massageReturnValue(final Object proxy, final Object target, final Method method, final Object result) {
+      // a target returning itself returns the proxy
+      return result != null && result == target && method.getReturnType().isInstance(proxy) ? proxy : result;
+    }
+
+    @Override
+    public Object intercept(final Object proxy, final Method method, final Object[] args, final MethodProxy methodProxy) throws Throwable {
+      if (method.getDeclaringClass() == ScopedObject.class) {
+        return handleScopedObject(method);
+      }
+      if (ReflectionUtils.isEqualsMethod(method)) {
+        return proxy == args[0];
+      }
+      if (ReflectionUtils.isHashCodeMethod(method)) {
+        return System.identityHashCode(proxy);
+      }
+      final Object target = resolveTarget();
+      return massageReturnValue(proxy, target, method, methodProxy.invoke(target, args));
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == ScopedObject.class) {
+        return handleScopedObject(method);
+      }
+      if (ReflectionUtils.isEqualsMethod(method)) {
+        return proxy == args[0];
+      }
+      if (ReflectionUtils.isHashCodeMethod(method)) {
+        return System.identityHashCode(proxy);
+      }
+      final Object target = resolveTarget();
+      try {
+        return massageReturnValue(proxy, target, method, method.invoke(target, args));
+      } catch (final InvocationTargetException e) {
+        throw e.getTargetException();
+      }
+    }
+  }
+
+  private static void closeQuietly(final Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (final IOException e) {
+        LOGGER.debug("Can't close " + closeable, e);
+      }
+    }
+  }
+
+  /**
+   * @return the cache file of the proxy class, named by the hash of all inputs of the generation
+   */
+  private static File cacheFile(final Class<?> targetClass) {
+    final String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+    if (directory == null) {
+      return null;
+    }
+    final Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(GENERATOR_VERSION, Charsets.UTF_8);
+    hasher.putString(String.valueOf(SpringVersion.getVersion()), Charsets.UTF_8);
+    hasher.putString(NAMING_TAG, Charsets.UTF_8);
+    for (final Class<?> type : PROXY_INTERFACES) {
+      hasher.putString(type.getName(), Charsets.UTF_8);
+    }
+    for (final Class<?> type : CALLBACK_TYPES) {
+      hasher.putString(type.getName(), Charsets.UTF_8);
+    }
+    hasher.putString(CALLBACK_FILTER.toString(), Charsets.UTF_8);
+    // the class loader by its type and the location the target class is loaded from, both stay the same across JVMs
+    final ClassLoader classLoader = targetClass.getClassLoader();
+    hasher.putString(classLoader == null ? "" : classLoader.getClass().getName(), Charsets.UTF_8);
+    final CodeSource codeSource = targetClass.getProtectionDomain().getCodeSource();
+    hasher.putString(codeSource == null || codeSource.getLocation() == null ? "" : codeSource.getLocation().toString(), Charsets.UTF_8);
+    for (Class<?> type = targetClass; type != Object.class; type = type.getSuperclass()) {
+      final InputStream in = type.getClassLoader() == null ? null : type.getClassLoader().getResourceAsStream(
+          ClassUtils.convertClassNameToResourcePath(type.getName()) + ClassUtils.CLASS_FILE_SUFFIX);
+      if (in == null) {
+        // generated or bootstrap class
+        return null;
+      }
+      try {
+        hasher.putBytes(ByteStreams.toByteArray(in));
+      } catch (final IOException e) {
+        LOGGER.warn("Can't read bytecode of " + type.getName(), e);
+        return null;
+      } finally {
+        closeQuietly(in);
+      }
+    }
+    return new File(directory, targetClass.getName() + "-" + hasher.hash() + ".proxy");
+  }
+
+  /**
+   * Define the cached proxy class, a class of the same name which is already defined (e.g. generated in this JVM) isn't reused.
+   *
+   * @return the proxy class or <code>null</code> if it can't be loaded or defined
+   */
+  private static Class<?> loadCachedProxyClass(final File cacheFile, final ClassLoader classLoader) {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new FileInputStream(cacheFile));
+      final String className = in.readUTF();
+      final byte[] bytecode = new byte[in.readInt()];
+      in.readFully(bytecode);
+      return ReflectUtils.defineClass(className, bytecode, classLoader);
+    } catch (final Exception e) {
+      LOGGER.warn("Can't load cached scoped proxy class from " + cacheFile + ", generate it again", e);
+      return null;
+    } catch (final LinkageError e) {
+      // e.g. a class of the same name is already defined
+      LOGGER.warn("Can't define cached scoped proxy class from " + cacheFile + ", generate it again", e);
+      return null;
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
+  private static void storeProxyClass(final File cacheFile, final Class<?> proxyClass, final byte[] bytecode) {
+    DataOutputStream out = null;
+    try {
+      cacheFile.getParentFile().mkdirs();
+      final File tmpFile = new File(cacheFile.getPath() + ".tmp");
+      out = new DataOutputStream(new FileOutputStream(tmpFile));
+      out.writeUTF(proxyClass.getName());
+      out.writeInt(bytecode.length);
+      out.write(bytecode);
+      out.close();
+      // replaces a cache file which couldn't be loaded
+      cacheFile.delete();
+      if (!tmpFile.renameTo(cacheFile)) {
+        tmpFile.delete();
+      }
+    } catch (final IOException e) {
+      LOGGER.warn("Can't store scoped proxy class in " + cacheFile, e);
+      closeQuietly(out);
+    }
+  }
+
+  static Class<?> generateProxyClass(final Class<?> targetClass) {
+    final File cacheFile = cacheFile(targetClass);
+    if (cacheFile != null && cacheFile.isFile()) {
+      final Class<?> proxyClass = loadCachedProxyClass(cacheFile, targetClass.getClassLoader());
+      if (proxyClass != null) {
+        LOGGER.debug("Loaded scoped proxy class {} from {}", proxyClass.getName(), cacheFile);
+        return proxyClass;
+      }
+    }
+    final BytecodeCapturingStrategy strategy = new BytecodeCapturingStrategy();
+    final Enhancer enhancer = new Enhancer();
+    enhancer.setSuperclass(targetClass);
+    enhancer.setInterfaces(PROXY_INTERFACES);
+    enhancer.setCallbackTypes(CALLBACK_TYPES);
+    enhancer.setCallbackFilter(CALLBACK_FILTER);
+    enhancer.setNamingPolicy(NAMING_POLICY);
+    enhancer.setUseFactory(false);
+    enhancer.setUseCache(false);
+    enhancer.setStrategy(strategy);
+    final Class<?> proxyClass = enhancer.createClass();
+    LOGGER.debug("Generated scoped proxy class {}", proxyClass.getName());
+    if (cacheFile != null && strategy.bytecode != null) {
+      storeProxyClass(cacheFile, proxyClass, strategy.bytecode);
+    }
+    return proxyClass;
+  }
+
+  /**
+   * @return the (cached) CGLIB proxy class for the given target class
+   */
+  static Class<?> proxyClassFor(final Class<?> targetClass) {
+    Class<?> proxyClass = PROXY_CLASSES.get(targetClass);
+    if (proxyClass == null) {
+      synchronized (PROXY_CLASSES) {
+        proxyClass = PROXY_CLASSES.get(targetClass);
+        if (proxyClass == null) {
+          proxyClass = generateProxyClass(targetClass);
+          PROXY_CLASSES.put(targetClass, proxyClass);
+        }
+      }
+    }
+    return proxyClass;
+  }
+
+  private String targetBeanName;
+
+  private boolean proxyTargetClass = true;
+
+  private Object proxy;
+
+  public void setTargetBeanName(final String targetBeanName) {
+    this.targetBeanName = targetBeanName;
+  }
+
+  public void setProxyTargetClass(final boolean proxyTargetClass) {
+    this.proxyTargetClass = proxyTargetClass;
+  }
+
+  @Override
+  public void setBeanFactory(final BeanFactory beanFactory) {
+    if (!(beanFactory instanceof ConfigurableBeanFactory)) {
+      throw new IllegalStateException("Not running in a ConfigurableBeanFactory: " + beanFactory);
+    }
+    final ConfigurableBeanFactory cbf = (ConfigurableBeanFactory) beanFactory;
+    final Class<?> beanType = beanFactory.getType(targetBeanName);
+    if (beanType == null) {
+      throw new IllegalStateException("Cannot create scoped proxy for bean '" + targetBeanName
+          + "': Target type could not be determined at the time of proxy creation.");
+    }
+    final TargetInvoker invoker = new TargetInvoker(cbf, targetBeanName);
+    if (!proxyTargetClass || beanType.isInterface() || Modifier.isPrivate(beanType.getModifiers())) {
+      final Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>(Arrays.asList(ClassUtils.getAllInterfacesForClass(beanType,
+          cbf.getBeanClassLoader())));
+      interfaces.addAll(Arrays.asList(PROXY_INTERFACES));
+      proxy = Proxy.newProxyInstance(cbf.getBeanClassLoader(), interfaces.toArray(new Class<?>[interfaces.size()]), invoker);
+    } else {
+      final Class<?> proxyClass = proxyClassFor(beanType);
+      Enhancer.registerCallbacks(proxyClass, new Callback[] {
+          invoker, NoOp.INSTANCE
+      });
+      try {
+        proxy = proxyClass.newInstance();
+      } catch (final Exception e) {
+        throw new IllegalStateException("Cannot create scoped proxy for bean '" + targetBeanName + "'", e);
+      } finally {
+        Enhancer.registerCallbacks(proxyClass, null);
+      }
+    }
+  }
+
+  @Override
+  public Object getObject() {
+    if (proxy == null) {
+      throw new IllegalStateException("Proxy not initialized yet");
+    }
+    return proxy;
+  }
+
+  @Override
+  public Class<?> getObjectType() {
+    return proxy == null ? null : proxy.getClass();
+  }
+
+  @Override
+  public boolean isSingleton() {
+    return true;
+  }
+}
@@ -0,0 +1,355 @@
+package com.mymita.spring;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.util.ClassUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.io.Files;
+
+/**
+ * Training mode for application class-data sharing (AppCDS, JEP 310). Boots an application context of the given configuration classes
+ * in a child JVM which records the loaded classes (<code>-XX:DumpLoadedClassList</code>), dumps them into a shared archive
+ * (<code>-Xshare:dump</code>) and verifies that a JVM started with the archive maps the application classes from it instead of loading
+ * and verifying them.
+ *
+ * AppCDS of application classes requires a JDK 10 or later for the child JVMs ({@link #setJavaHome(File)}, JDK 10 needs
+ * <code>-XX:+UseAppCDS</code> which is added), a JDK 8 archives the classes of the boot class path only. The JVM of the trainer itself
+ * may be older. The archive only contains classes from JAR files, the directories of the class path are packed into JAR files in the
+ * output directory, start the application with {@link #getClassPath()} and <code>-XX:SharedArchiveFile</code>. Generated classes
+ * (enhanced configuration classes, scoped proxies) can't be archived.
+ *
+ * <pre>
+ * java -cp ... com.mymita.spring.ClassDataSharingTrainer /opt/jdk-17 target/cds com.mymita.spring.test1.AutowireTest1$TestConfiguration
+ * </pre>
+ */
+public class ClassDataSharingTrainer {
+
+  public static final String CLASS_LIST_FILE = "classes.lst";
+
+  public static final String ARCHIVE_FILE = "app.jsa";
+
+  /** first JDK which archives application classes */
+  public static final int MIN_JAVA_VERSION = 10;
+
+  private static final String MEASURE_OPTION = "-measure";
+
+  /** class loaded from the archive, logged by <code>-Xlog:class+load</code> */
+  private static final Pattern SHARED_CLASS = Pattern.compile("^\\[.*\\]\\s*(\\S+) source: shared objects file");
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClassDataSharingTrainer.class);
+
+  /**
+   * @return the major version of the JDK in the given directory, read from its <code>release</code> file, <code>0</code> if unknown
+   */
+  public static int javaVersion(final File javaHome) {
+    final File release = new File(javaHome, "release");
+    if (!release.isFile()) {
+      // the java.home of a JDK 8 is its jre directory
+      return javaHome.getName().equals("jre") ? javaVersion(javaHome.getParentFile()) : 0;
+    }
+    final Properties properties = new Properties();
+    try {
+      final Reader reader = Files.newReader(release, Charsets.UTF_8);
+      try {
+        properties.load(reader);
+      } finally {
+        reader.close();
+      }
+    } catch (final IOException e) {
+      LOGGER.warn("Can't read " + release, e);
+      return 0;
+    }
+    final String version = properties.getProperty("JAVA_VERSION", "").replace("\"", "");
+    final Matcher matcher = Pattern.compile("^(?:1\\.)?(\\d+)").matcher(version);
+    return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+  }
+
+  private static void addToJar(final JarOutputStream jar, final File directory, final String path) throws IOException {
+    final File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (final File file : files) {
+      if (file.isDirectory()) {
+        jar.putNextEntry(new JarEntry(path + file.getName() + "/"));
+        jar.closeEntry();
+        addToJar(jar, file, path + file.getName() + "/");
+      } else {
+        jar.putNextEntry(new JarEntry(path + file.getName()));
+        Files.copy(file, jar);
+        jar.closeEntry();
+      }
+    }
+  }
+
+  private final List<String> configurationClassNames;
+
+  private File javaHome = new File(System.getProperty("java.home"));
+
+  private String classPath = System.getProperty("java.class.path");
+
+  private File directory;
+
+  private final Set<String> classes = new LinkedHashSet<String>();
+
+  public ClassDataSharingTrainer(final String... configurationClassNames) {
+    this.configurationClassNames = Arrays.asList(configurationClassNames);
+  }
+
+  /**
+   * @param javaHome JDK of the child JVMs, {@value #MIN_JAVA_VERSION} or later (default is the JDK of this JVM)
+   */
+  public ClassDataSharingTrainer setJavaHome(final File javaHome) {
+    this.javaHome = javaHome;
+    return this;
+  }
+
+  /**
+   * @param classPath class path of the application (default is the class path of this JVM)
+   */
+  public ClassDataSharingTrainer setClassPath(final String classPath) {
+    this.classPath = classPath;
+    return this;
+  }
+
+  /**
+   * @return the class path the archive is dumped for, the application must be started with it
+   */
+  public String getClassPath() {
+    return classPath;
+  }
+
+  /**
+   * @return internal names of the classes recorded by {@link #train(File)}
+   */
+  public Set<String> getClasses() {
+    return Collections.unmodifiableSet(classes);
+  }
+
+  public File getClassList() {
+    return new File(directory, CLASS_LIST_FILE);
+  }
+
+  public File getArchive() {
+    return new File(directory, ARCHIVE_FILE);
+  }
+
+  /**
+   * Boot and close the application context once in a child JVM which records the loaded classes in the class list.
+   *
+   * @param directory output directory of the class list, the archive and the packed class path directories
+   * @return the class list
+   */
+  public File train(final File directory) throws IOException, InterruptedException {
+    final int version = javaVersion(javaHome);
+    if (version < MIN_JAVA_VERSION) {
+      throw new IllegalStateException(String.format("AppCDS of application classes requires a JDK %s or later, %s is %s",
+          MIN_JAVA_VERSION, javaHome, version == 0 ? "unknown" : version));
+    }
+    this.directory = directory;
+    directory.mkdirs();
+    packClassPath();
+    final List<String> arguments = new ArrayList<String>();
+    arguments.add("-Xshare:off");
+    arguments.add("-XX:DumpLoadedClassList=" + getClassList().getPath());
+    runApplication(arguments);
+    classes.clear();
+    final List<String> lines = new ArrayList<String>();
+    for (final String line : Files.readLines(getClassList(), Charsets.UTF_8)) {
+      // generated classes have no class file to archive
+      if (line.contains("$$")) {
+        continue;
+      }
+      lines.add(line);
+      // skip comments and lambda proxy entries
+      if (!line.isEmpty() && !line.startsWith("#") && !line.startsWith("@")) {
+        classes.add(line.split(" ", 2)[0]);
+      }
+    }
+    Files.write(Joiner.on('\n').join(lines) + '\n', getClassList(), Charsets.UTF_8);
+    LOGGER.debug("Recorded {} classes in '{}'", classes.size(), getClassList());
+    return getClassList();
+  }
+
+  /**
+   * Replace the directories of the class path by JAR files, a shared archive only contains classes from JAR files.
+   */
+  private void packClassPath() throws IOException {
+    final List<String> entries = new ArrayList<String>();
+    int index = 0;
+    for (final String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(classPath)) {
+      final File file = new File(entry);
+      if (file.isDirectory()) {
+        final File jarFile = new File(directory, "classes-" + index++ + ".jar");
+        final JarOutputStream jar = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+          addToJar(jar, file, "");
+        } finally {
+          jar.close();
+        }
+        LOGGER.debug("Packed class path directory '{}' into '{}'", file, jarFile);
+        entries.add(jarFile.getAbsolutePath());
+      } else if (file.isFile()) {
+        entries.add(file.getAbsolutePath());
+      }
+    }
+    classPath = Joiner.on(File.pathSeparatorChar).join(entries);
+  }
+
+  /**
+   * Dump the shared archive of the class list recorded by {@link #train(File)}, the archive is only usable with {@link #getClassPath()}.
+   *
+   * @return the archive
+   */
+  public File dumpArchive() throws IOException, InterruptedException {
+    final List<String> arguments = new ArrayList<String>();
+    arguments.add("-Xshare:dump");
+    arguments.add("-XX:SharedClassListFile=" + getClassList().getPath());
+    arguments.add("-XX:SharedArchiveFile=" + getArchive().getPath());
+    for (final String line : runJava(arguments)) {
+      if (line.contains("Preload Warning")) {
+        LOGGER.debug(line);
+      }
+    }
+    LOGGER.debug("Shared archive written to '{}'", getArchive());
+    return getArchive();
+  }
+
+  /**
+   * Boot the application context in a child JVM which must map the archive (<code>-Xshare:on</code>).
+   *
+   * @return names of the classes loaded from the archive
+   */
+  public Set<String> verifyArchive() throws IOException, InterruptedException {
+    final Set<String> result = new LinkedHashSet<String>();
+    for (final String line : runApplication(archiveArguments("-Xshare:on", "-Xlog:class+load=info"))) {
+      final Matcher matcher = SHARED_CLASS.matcher(line);
+      if (matcher.find()) {
+        result.add(matcher.group(1));
+      }
+    }
+    LOGGER.debug("{} classes loaded from '{}'", result.size(), getArchive());
+    return result;
+  }
+
+  /**
+   * Boot the application context in a child JVM. Without the archive the JVM still maps the default CDS archive of the JDK
+   * (<code>-Xshare:auto</code>), so the difference is the gain of archiving the application classes.
+   *
+   * @param useArchive <code>true</code> to use the archive
+   * @return time the application context took to start
+   */
+  public long measureStartupNanos(final boolean useArchive) throws IOException, InterruptedException {
+    final List<String> output = runApplication(useArchive ? archiveArguments("-Xshare:auto") : Arrays.asList("-Xshare:auto"));
+    return Long.parseLong(output.get(output.size() - 1).trim());
+  }
+
+  private List<String> archiveArguments(final String... options) {
+    final List<String> result = new ArrayList<String>();
+    result.add("-XX:SharedArchiveFile=" + getArchive().getPath());
+    result.addAll(Arrays.asList(options));
+    return result;
+  }
+
+  private List<String> runApplication(final List<String> options) throws IOException, InterruptedException {
+    final List<String> arguments = new ArrayList<String>(options);
+    arguments.add(ClassDataSharingTrainer.class.getName());
+    arguments.add(MEASURE_OPTION);
+    arguments.addAll(configurationClassNames);
+    return runJava(arguments);
+  }
+
+  /**
+   * Run the java command of the JDK with the class path.
+   *
+   * @return the output lines
+   */
+  private List<String> runJava(final List<String> arguments) throws IOException, InterruptedException {
+    final List<String> command = new ArrayList<String>();
+    command.add(new File(new File(javaHome, "bin"), "java").getPath());
+    if (javaVersion(javaHome) == MIN_JAVA_VERSION) {
+      command.add("-XX:+UseAppCDS");
+    }
+    // CGLIB defines the generated classes through ClassLoader.defineClass
+    command.add("--add-opens");
+    command.add("java.base/java.lang=ALL-UNNAMED");
+    command.add("-cp");
+    command.add(classPath);
+    command.addAll(arguments);
+    LOGGER.debug("Run {}", command);
+    final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    final List<String> output = new ArrayList<String>();
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        output.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    if (process.waitFor() != 0) {
+      throw new IOException(String.format("%s failed: %s", command, Joiner.on('\n').join(output)));
+    }
+    return output;
+  }
+
+  /**
+   * Train the given configuration classes, dump and verify the shared archive and compare the startup time with and without it.
+   *
+   * <pre>
+   * ClassDataSharingTrainer &lt;java home&gt; &lt;output directory&gt; &lt;configuration class&gt;...
+   * ClassDataSharingTrainer -measure &lt;configuration class&gt;...
+   * </pre>
+   */
+  public static void main(final String[] args) throws Exception {
+    if (args.length >= 2 && MEASURE_OPTION.equals(args[0])) {
+      final Class<?>[] configurationClasses = new Class<?>[args.length - 1];
+      for (int i = 1; i < args.length; i++) {
+        configurationClasses[i - 1] = ClassUtils.forName(args[i], ClassUtils.getDefaultClassLoader());
+      }
+      final long start = System.nanoTime();
+      new AnnotationConfigApplicationContext(configurationClasses).close();
+      System.out.println(System.nanoTime() - start);
+      return;
+    }
+    if (args.length < 3) {
+      System.err.println("Usage: ClassDataSharingTrainer <java home> <output directory> <configuration class>...");
+      System.exit(1);
+    }
+    final ClassDataSharingTrainer trainer = new ClassDataSharingTrainer(Arrays.copyOfRange(args, 2, args.length))
+        .setJavaHome(new File(args[0]));
+    trainer.train(new File(args[1]));
+    final File archive = trainer.dumpArchive();
+    final Set<String> sharedClasses = trainer.verifyArchive();
+    final long withoutArchive = trainer.measureStartupNanos(false);
+    final long withArchive = trainer.measureStartupNanos(true);
+    System.out.println(String.format("%s classes recorded, %s loaded from %s", trainer.getClasses().size(), sharedClasses.size(),
+        archive));
+    System.out.println(String.format("Startup %.1f ms with the default CDS archive, %.1f ms with the application archive",
+        withoutArchive / 1000000d, withArchive / 1000000d));
+    System.out.println(String.format("Start the application with -cp %s -XX:SharedArchiveFile=%s", trainer.getClassPath(), archive));
+  }
+}
@@ -0,0 +1,149 @@
+package com.mymita.spring;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.TypeConverter;
+import org.springframework.beans.factory.annotation.QualifierAnnotationAutowireCandidateResolver;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.DependencyDescriptor;
+import org.springframework.core.MethodParameter;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * {@link QualifierAnnotationAutowireCandidateResolver} which uses the {@link CompiledQualifierMatcher}s attached to a bean definition
+ * (see {@link CompiledQualifierMatcher#ATTRIBUTE}) and falls back to the reflective qualifier check for all other bean definitions.
+ * Matching qualifiers are counted in the {@link #setMetrics(FoobarMetrics) metrics} if set.
+ *
+ * The attribute values of the injection point annotations are cached per resolver (i.e. per bean factory). The annotations of fields,
+ * methods and annotation types are shared, their values are cached weakly by annotation identity. Method and constructor parameter
+ * annotations (e.g. of <code>@Bean</code> methods) are parsed again for every {@link MethodParameter}, their values are cached by the
+ * declaring method, the parameter index and the annotation type instead.
+ */
+public class CompiledQualifierAutowireCandidateResolver extends QualifierAnnotationAutowireCandidateResolver {
+
+  private final ConcurrentMap<Class<? extends Annotation>, Method[]> attributeMethods = new MapMaker().weakKeys().makeMap();
+
+  private final ConcurrentMap<Annotation, Object[]> attributeValues = new MapMaker().weakKeys().makeMap();
+
+  /** method or constructor, parameter index and annotation type to the attribute values of the parameter annotation */
+  private final ConcurrentMap<List<Object>, Object[]> parameterAttributeValues = new ConcurrentHashMap<List<Object>, Object[]>();
+
+  /** injection point currently resolved by the calling thread */
+  private final ThreadLocal<DependencyDescriptor> currentDescriptor = new ThreadLocal<DependencyDescriptor>();
+
+  private volatile FoobarMetrics metrics;
+
+  /**
+   * @param metrics metrics counting the matching qualifiers, <code>null</code> (default) to record nothing
+   */
+  public void setMetrics(final FoobarMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public boolean isAutowireCandidate(final BeanDefinitionHolder bdHolder, final DependencyDescriptor descriptor) {
+    final DependencyDescriptor priorDescriptor = currentDescriptor.get();
+    try {
+      currentDescriptor.set(descriptor);
+      return super.isAutowireCandidate(bdHolder, descriptor);
+    } finally {
+      if (priorDescriptor != null) {
+        currentDescriptor.set(priorDescriptor);
+      } else {
+        currentDescriptor.remove();
+      }
+    }
+  }
+
+  @Override
+  protected boolean checkQualifier(final BeanDefinitionHolder bdHolder, final Annotation annotation, final TypeConverter typeConverter) {
+    final boolean result = matches(bdHolder, annotation, typeConverter);
+    final FoobarMetrics metrics = this.metrics;
+    if (result && metrics != null) {
+      metrics.recordQualifierMatch(annotation);
+    }
+    return result;
+  }
+
+  private boolean matches(final BeanDefinitionHolder bdHolder, final Annotation annotation, final TypeConverter typeConverter) {
+    final Object matchers = bdHolder.getBeanDefinition().getAttribute(CompiledQualifierMatcher.ATTRIBUTE);
+    if (matchers instanceof CompiledQualifierMatcher[]) {
+      final Class<? extends Annotation> type = annotation.annotationType();
+      for (final CompiledQualifierMatcher matcher : (CompiledQualifierMatcher[]) matchers) {
+        if (matcher.getQualifierType() == type) {
+          return matcher.matches(attributeValues(annotation));
+        }
+      }
+    }
+    return super.checkQualifier(bdHolder, annotation, typeConverter);
+  }
+
+  /**
+   * @return the key of the given annotation if it is a parameter annotation of the current injection point, <code>null</code> otherwise
+   */
+  private List<Object> parameterKey(final Annotation annotation) {
+    final DependencyDescriptor descriptor = currentDescriptor.get();
+    final MethodParameter methodParameter = descriptor == null ? null : descriptor.getMethodParameter();
+    if (methodParameter == null) {
+      return null;
+    }
+    for (final Annotation parameterAnnotation : descriptor.getAnnotations()) {
+      if (parameterAnnotation == annotation) {
+        final Object member = methodParameter.getMethod() != null ? methodParameter.getMethod() : methodParameter.getConstructor();
+        return Arrays.<Object> asList(member, methodParameter.getParameterIndex(), annotation.annotationType());
+      }
+    }
+    return null;
+  }
+
+  private Object[] attributeValues(final Annotation annotation) {
+    Object[] values = attributeValues.get(annotation);
+    if (values != null) {
+      return values;
+    }
+    final List<Object> parameterKey = parameterKey(annotation);
+    if (parameterKey != null) {
+      values = parameterAttributeValues.get(parameterKey);
+      if (values == null) {
+        values = readAttributeValues(annotation);
+        parameterAttributeValues.put(parameterKey, values);
+      }
+    } else {
+      values = readAttributeValues(annotation);
+      attributeValues.put(annotation, values);
+    }
+    return values;
+  }
+
+  private Object[] readAttributeValues(final Annotation annotation) {
+    final Method[] methods = attributeMethods(annotation.annotationType());
+    final Object[] values = new Object[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      values[i] = ReflectionUtils.invokeMethod(methods[i], annotation);
+    }
+    return values;
+  }
+
+  private Method[] attributeMethods(final Class<? extends Annotation> type) {
+    Method[] methods = attributeMethods.get(type);
+    if (methods == null) {
+      methods = CompiledQualifierMatcher.attributeMethods(type);
+      attributeMethods.put(type, methods);
+    }
+    return methods;
+  }
+
+  /**
+   * @return number of injection point annotations whose attribute values are cached
+   */
+  int cachedAttributeValues() {
+    return attributeValues.size() + parameterAttributeValues.size();
+  }
+}
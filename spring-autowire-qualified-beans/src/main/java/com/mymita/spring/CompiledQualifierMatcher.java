@@ -0,0 +1,162 @@
+package com.mymita.spring;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.AutowireCandidateQualifier;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * A {@link AutowireCandidateQualifier} compiled once (when the bean definition is registered) into the expected attribute values of
+ * its qualifier annotation type. Matching an injection point annotation compares the values by identity (enums) or equality without
+ * reflection. The matcher holds no caches, {@link CompiledQualifierAutowireCandidateResolver} caches the attribute values of the
+ * injection point annotations per bean factory.
+ *
+ * The matcher follows the rules of <code>QualifierAnnotationAutowireCandidateResolver.checkQualifier</code>, qualifiers which
+ * depend on the bean name or on bean definition attributes are not compiled and left to the reflective resolution.
+ *
+ * @see CompiledQualifierAutowireCandidateResolver
+ */
+public final class CompiledQualifierMatcher {
+
+  /**
+   * Name of the bean definition attribute holding the compiled matchers (<code>CompiledQualifierMatcher[]</code>).
+   */
+  public static final String ATTRIBUTE = CompiledQualifierMatcher.class.getName();
+
+  private static final Comparator<Method> BY_NAME = new Comparator<Method>() {
+    @Override
+    public int compare(final Method m1, final Method m2) {
+      return m1.getName().compareTo(m2.getName());
+    }
+  };
+
+  /**
+   * @return the attribute methods of the given annotation type sorted by name
+   */
+  public static Method[] attributeMethods(final Class<? extends Annotation> type) {
+    final Method[] methods = type.getDeclaredMethods();
+    Arrays.sort(methods, BY_NAME);
+    for (final Method method : methods) {
+      ReflectionUtils.makeAccessible(method);
+    }
+    return methods;
+  }
+
+  /**
+   * @return the attribute values of the given annotation in the order of {@link #attributeMethods(Class)}
+   */
+  public static Object[] attributeValues(final Annotation annotation) {
+    final Method[] methods = attributeMethods(annotation.annotationType());
+    final Object[] values = new Object[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      values[i] = ReflectionUtils.invokeMethod(methods[i], annotation);
+    }
+    return values;
+  }
+
+  /**
+   * Convert a qualifier attribute value (e.g. the string <code>"FOO"</code> of a XML qualifier) to the attribute type.
+   *
+   * @return the converted value or <code>null</code> if it can't be converted
+   */
+  @SuppressWarnings({
+      "unchecked", "rawtypes"
+  })
+  private static Object convert(final Object value, final Class<?> type) {
+    final Class<?> wrapperType = ClassUtils.resolvePrimitiveIfNecessary(type);
+    if (wrapperType.isInstance(value)) {
+      return value;
+    }
+    if (type.isEnum() && value instanceof String) {
+      try {
+        return Enum.valueOf((Class<? extends Enum>) type, (String) value);
+      } catch (final IllegalArgumentException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compile the given qualifier of the bean definition.
+   *
+   * @return the matcher or <code>null</code> if the qualifier can't be compiled
+   */
+  public static CompiledQualifierMatcher compile(final Class<? extends Annotation> qualifierType,
+      final AutowireCandidateQualifier qualifier, final AbstractBeanDefinition beanDefinition) {
+    final Method[] methods = attributeMethods(qualifierType);
+    final Object[] values = new Object[methods.length];
+    final boolean[] identity = new boolean[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      final Method method = methods[i];
+      final Class<?> type = method.getReturnType();
+      if (type.isArray()) {
+        // arrays never match by equals
+        return null;
+      }
+      Object value = qualifier.getAttribute(method.getName());
+      if (value == null) {
+        if (beanDefinition.getAttribute(method.getName()) != null) {
+          // bean definition attribute used as fallback
+          return null;
+        }
+        if (AutowireCandidateQualifier.VALUE_KEY.equals(method.getName()) && type == String.class) {
+          // might match the bean name
+          return null;
+        }
+        value = method.getDefaultValue();
+      }
+      if (value == null || (values[i] = convert(value, type)) == null) {
+        return null;
+      }
+      identity[i] = type.isEnum();
+    }
+    return new CompiledQualifierMatcher(qualifierType, values, identity);
+  }
+
+  private final Class<? extends Annotation> qualifierType;
+
+  private final Object[] values;
+
+  private final boolean[] identity;
+
+  private CompiledQualifierMatcher(final Class<? extends Annotation> qualifierType, final Object[] values, final boolean[] identity) {
+    this.qualifierType = qualifierType;
+    this.values = values;
+    this.identity = identity;
+  }
+
+  public Class<? extends Annotation> getQualifierType() {
+    return qualifierType;
+  }
+
+  /**
+   * @param annotation injection point annotation of the {@link #getQualifierType() qualifier type}
+   */
+  public boolean matches(final Annotation annotation) {
+    return matches(attributeValues(annotation));
+  }
+
+  /**
+   * @param expectedValues {@link #attributeValues(Annotation) attribute values} of an injection point annotation of the
+   *          {@link #getQualifierType() qualifier type}
+   */
+  public boolean matches(final Object[] expectedValues) {
+    for (int i = 0; i < values.length; i++) {
+      if (identity[i] ? expectedValues[i] != values[i] : !expectedValues[i].equals(values[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledQualifierMatcher " + qualifierType.getName() + Arrays.toString(values);
+  }
+}
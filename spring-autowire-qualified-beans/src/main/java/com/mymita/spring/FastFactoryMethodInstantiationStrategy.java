@@ -0,0 +1,134 @@
+package com.mymita.spring;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.support.CglibSubclassingInstantiationStrategy;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.beans.factory.support.SimpleInstantiationStrategy;
+import org.springframework.cglib.reflect.FastClass;
+import org.springframework.cglib.reflect.FastMethod;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * {@link CglibSubclassingInstantiationStrategy} which invokes factory methods (<code>@Bean</code> methods) through a generated CGLIB
+ * {@link FastMethod} instead of reflection. The accessor is generated once per factory method, so creating prototype and scoped beans
+ * again and again calls the factory method directly.
+ *
+ * Like {@link SimpleInstantiationStrategy} the invoked method is exposed by
+ * {@link SimpleInstantiationStrategy#getCurrentlyInvokedFactoryMethod()}, which the enhanced configuration classes need to tell bean
+ * creation from inter-bean method calls. Factory methods which can't be accessed by a generated class (e.g. private methods) and all
+ * methods if that thread local isn't accessible are invoked reflectively. The arguments are checked before the generated invoker is
+ * called, which would report a mismatch as exception thrown by the factory method.
+ */
+public class FastFactoryMethodInstantiationStrategy extends CglibSubclassingInstantiationStrategy {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FastFactoryMethodInstantiationStrategy.class);
+
+  /** <code>SimpleInstantiationStrategy.currentlyInvokedFactoryMethod</code> */
+  private static final ThreadLocal<Method> CURRENTLY_INVOKED_FACTORY_METHOD = currentlyInvokedFactoryMethod();
+
+  /** marks factory methods which are invoked reflectively */
+  private static final Object REFLECTIVE = new Object();
+
+  @SuppressWarnings("unchecked")
+  private static ThreadLocal<Method> currentlyInvokedFactoryMethod() {
+    try {
+      final Field field = SimpleInstantiationStrategy.class.getDeclaredField("currentlyInvokedFactoryMethod");
+      ReflectionUtils.makeAccessible(field);
+      return (ThreadLocal<Method>) field.get(null);
+    } catch (final Exception e) {
+      LOGGER.warn("Can't access the currently invoked factory method, factory methods are invoked reflectively", e);
+      return null;
+    }
+  }
+
+  private static final class FastInvoker {
+
+    private final FastMethod method;
+
+    private final Class<?>[] parameterTypes;
+
+    FastInvoker(final FastMethod method) {
+      this.method = method;
+      this.parameterTypes = method.getParameterTypes();
+    }
+
+    boolean isAssignable(final Object[] args) {
+      final int length = args == null ? 0 : args.length;
+      if (length != parameterTypes.length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (!ClassUtils.isAssignableValue(parameterTypes[i], args[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** factory method to its {@link FastInvoker} or {@link #REFLECTIVE} */
+  private final ConcurrentMap<Method, Object> invokers = new ConcurrentHashMap<Method, Object>();
+
+  private Object invokerFor(final Method factoryMethod) {
+    Object invoker = invokers.get(factoryMethod);
+    if (invoker == null) {
+      invoker = REFLECTIVE;
+      if (CURRENTLY_INVOKED_FACTORY_METHOD != null && !Modifier.isPrivate(factoryMethod.getModifiers())) {
+        try {
+          invoker = new FastInvoker(FastClass.create(factoryMethod.getDeclaringClass()).getMethod(factoryMethod));
+        } catch (final RuntimeException e) {
+          LOGGER.debug("Can't generate invoker for factory method " + factoryMethod + ", invoke it reflectively", e);
+        }
+      }
+      invokers.putIfAbsent(factoryMethod, invoker);
+    }
+    return invoker;
+  }
+
+  /**
+   * @return <code>true</code> if the given factory method was invoked by a generated invoker
+   */
+  boolean isFastInvoked(final Method factoryMethod) {
+    return invokers.get(factoryMethod) instanceof FastInvoker;
+  }
+
+  @Override
+  public Object instantiate(final RootBeanDefinition beanDefinition, final String beanName, final BeanFactory owner,
+      final Object factoryBean, final Method factoryMethod, final Object[] args) {
+    final Object invoker = invokerFor(factoryMethod);
+    if (invoker == REFLECTIVE) {
+      return super.instantiate(beanDefinition, beanName, owner, factoryBean, factoryMethod, args);
+    }
+    final FastInvoker fastInvoker = (FastInvoker) invoker;
+    if (!fastInvoker.isAssignable(args)) {
+      // the generated invoker casts the arguments inside the invocation
+      throw new BeanDefinitionStoreException("Illegal arguments to factory method [" + factoryMethod + "]; args: "
+          + StringUtils.arrayToCommaDelimitedString(args));
+    }
+    final Method priorInvokedFactoryMethod = CURRENTLY_INVOKED_FACTORY_METHOD.get();
+    try {
+      CURRENTLY_INVOKED_FACTORY_METHOD.set(factoryMethod);
+      return fastInvoker.method.invoke(factoryBean, args);
+    } catch (final InvocationTargetException e) {
+      throw new BeanDefinitionStoreException("Factory method [" + factoryMethod + "] threw exception", e.getTargetException());
+    } finally {
+      if (priorInvokedFactoryMethod != null) {
+        CURRENTLY_INVOKED_FACTORY_METHOD.set(priorInvokedFactoryMethod);
+      } else {
+        CURRENTLY_INVOKED_FACTORY_METHOD.remove();
+      }
+    }
+  }
+}
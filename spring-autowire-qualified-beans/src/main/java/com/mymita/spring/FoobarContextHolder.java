@@ -0,0 +1,31 @@
+package com.mymita.spring;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+/**
+ * Holds the {@link ContextType} of the current request (thread), e.g. set by a filter or interceptor and used by
+ * {@link FoobarServiceRouter#current()} and {@link FoobarServiceRouter#currentAll()}.
+ */
+public final class FoobarContextHolder {
+
+  private static final ThreadLocal<ContextType> CONTEXT_TYPE = new ThreadLocal<ContextType>();
+
+  private FoobarContextHolder() {
+  }
+
+  public static ContextType get() {
+    return CONTEXT_TYPE.get();
+  }
+
+  public static void set(final ContextType contextType) {
+    if (contextType == null) {
+      CONTEXT_TYPE.remove();
+    } else {
+      CONTEXT_TYPE.set(contextType);
+    }
+  }
+
+  public static void reset() {
+    CONTEXT_TYPE.remove();
+  }
+}
@@ -0,0 +1,85 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.AutowireCandidateQualifier;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+/**
+ * Helper to read the {@link FoobarContext} qualifier of bean definitions.
+ */
+public final class FoobarContextUtils {
+
+  private FoobarContextUtils() {
+  }
+
+  /**
+   * Determine the {@link ContextType} of the given bean definition, either from its {@link FoobarContext} qualifier (attached by
+   * <code>ConfigurationClassBeanDefinitionReader</code> or defined in XML) or from the annotation of a scanned component.
+   *
+   * @return the context type or <code>null</code> if the bean isn't qualified with {@link FoobarContext}
+   */
+  public static ContextType contextTypeOf(final BeanDefinition beanDefinition) {
+    if (beanDefinition instanceof AbstractBeanDefinition) {
+      final AutowireCandidateQualifier qualifier = ((AbstractBeanDefinition) beanDefinition).getQualifier(FoobarContext.class.getName());
+      if (qualifier != null) {
+        return toContextType(qualifier.getAttribute(AutowireCandidateQualifier.VALUE_KEY));
+      }
+    }
+    // configuration class bean definitions carry the metadata of the configuration class, not of the @Bean method
+    if (beanDefinition instanceof AnnotatedBeanDefinition && beanDefinition.getFactoryMethodName() == null) {
+      final Map<String, Object> attributes = ((AnnotatedBeanDefinition) beanDefinition).getMetadata().getAnnotationAttributes(
+          FoobarContext.class.getName());
+      if (attributes != null) {
+        return toContextType(attributes.get(AutowireCandidateQualifier.VALUE_KEY));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Collect the names of the {@link FoobarService} beans qualified with {@link FoobarContext}, the targets of scoped proxies are
+   * skipped.
+   *
+   * @return bean names by context type in registration order, context types without beans are missing
+   */
+  public static Map<ContextType, List<String>> serviceBeanNamesByContextType(final ConfigurableListableBeanFactory beanFactory) {
+    final Map<ContextType, List<String>> result = new EnumMap<ContextType, List<String>>(ContextType.class);
+    for (final String beanName : beanFactory.getBeanNamesForType(FoobarService.class)) {
+      final BeanDefinition bd = beanFactory.getMergedBeanDefinition(beanName);
+      // skip the targets of scoped proxies
+      if (!bd.isAutowireCandidate()) {
+        continue;
+      }
+      final ContextType contextType = contextTypeOf(bd);
+      if (contextType != null) {
+        List<String> beanNames = result.get(contextType);
+        if (beanNames == null) {
+          beanNames = new ArrayList<String>();
+          result.put(contextType, beanNames);
+        }
+        beanNames.add(beanName);
+      }
+    }
+    return result;
+  }
+
+  private static ContextType toContextType(final Object value) {
+    if (value == null) {
+      return (ContextType) AnnotationUtils.getDefaultValue(FoobarContext.class);
+    }
+    if (value instanceof ContextType) {
+      return (ContextType) value;
+    }
+    return ContextType.valueOf(value.toString());
+  }
+}
@@ -0,0 +1,289 @@
+package com.mymita.spring;
+
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.scope.ScopedProxyUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.Scope;
+import org.springframework.beans.factory.support.AutowireCandidateResolver;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ObjectUtils;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Scope and qualifier resolution metrics of one application context. Nothing is recorded unless the metrics are declared as bean:
+ * the {@link #setScopes(Map) scopes} are registered wrapped in a {@link MonitoredScope} and the qualifier matches are counted by the
+ * {@link CompiledQualifierAutowireCandidateResolver} of the bean factory (if installed, see {@link QualifiedBeanFactoryConfigurer}).
+ * The counters are striped by thread (see {@link StripedLongArray}), so recording is cheap enough to stay on under load.
+ *
+ * The metrics are registered as MXBean <code>com.mymita.spring:type=FoobarMetrics,context=&lt;context id&gt;</code> with the platform
+ * MBean server while the application context is active.
+ *
+ * <pre>
+ * &#064;Bean
+ * static FoobarMetrics foobarMetrics() {
+ *   final FoobarMetrics metrics = new FoobarMetrics();
+ *   metrics.setScopes(Collections.singletonMap(&quot;foobarScope&quot;, new SimpleThreadScope()));
+ *   return metrics;
+ * }
+ * </pre>
+ */
+public class FoobarMetrics implements FoobarMetricsMXBean, BeanFactoryPostProcessor, Ordered, ApplicationContextAware, InitializingBean,
+    DisposableBean {
+
+  public static final String OBJECT_NAME = "com.mymita.spring:type=FoobarMetrics";
+
+  public static final int HISTOGRAM_BUCKETS = 64;
+
+  /** maximum number of distinct qualifiers counted, further qualifiers are counted as {@link #OTHER_QUALIFIERS} */
+  public static final int MAX_QUALIFIERS = 256;
+
+  public static final String OTHER_QUALIFIERS = "(other)";
+
+  private static final String SCOPED_TARGET_PREFIX = ScopedProxyUtils.getTargetBeanName("");
+
+  private static final String VALUE = "value";
+
+  private static final int GETS = 0;
+
+  private static final int MISSES = 1;
+
+  private static final int LIVE = 2;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FoobarMetrics.class);
+
+  private static String scopedBeanName(final String name) {
+    return name.startsWith(SCOPED_TARGET_PREFIX) ? name.substring(SCOPED_TARGET_PREFIX.length()) : name;
+  }
+
+  private static StripedLongArray counters(final ConcurrentMap<String, StripedLongArray> counters, final String key, final int length) {
+    StripedLongArray result = counters.get(key);
+    if (result == null) {
+      final StripedLongArray created = new StripedLongArray(length);
+      result = counters.putIfAbsent(key, created);
+      if (result == null) {
+        result = created;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the simple qualifier type name and its attributes, e.g. <code>FoobarContext(FOO)</code>
+   */
+  private static String qualifierKey(final Annotation annotation) {
+    final Map<String, Object> attributes = new TreeMap<String, Object>(AnnotationUtils.getAnnotationAttributes(annotation));
+    final StringBuilder key = new StringBuilder(annotation.annotationType().getSimpleName()).append('(');
+    if (attributes.size() == 1 && attributes.containsKey(VALUE)) {
+      key.append(ObjectUtils.nullSafeToString(attributes.get(VALUE)));
+    } else {
+      for (final Map.Entry<String, Object> attribute : attributes.entrySet()) {
+        if (key.charAt(key.length() - 1) != '(') {
+          key.append(", ");
+        }
+        key.append(attribute.getKey()).append('=').append(ObjectUtils.nullSafeToString(attribute.getValue()));
+      }
+    }
+    return key.append(')').toString();
+  }
+
+  /** scoped bean name to its {@link #GETS}, {@link #MISSES} and {@link #LIVE} counters */
+  private final ConcurrentMap<String, StripedLongArray> scopedBeans = new ConcurrentHashMap<String, StripedLongArray>();
+
+  private final ConcurrentMap<String, StripedLongArray> latencies = new ConcurrentHashMap<String, StripedLongArray>();
+
+  private final ConcurrentMap<String, StripedLongArray> qualifiers = new ConcurrentHashMap<String, StripedLongArray>();
+
+  /** injection point annotations are shared, so the keys are computed once, weak so that they don't pin the annotations */
+  private final ConcurrentMap<Annotation, String> qualifierKeys = new MapMaker().weakKeys().makeMap();
+
+  private Map<String, ? extends Scope> scopes = Collections.emptyMap();
+
+  private ObjectName objectName;
+
+  private boolean registered;
+
+  /**
+   * @param scopes scopes to register (like {@link org.springframework.beans.factory.config.CustomScopeConfigurer}) wrapped in a
+   *          {@link MonitoredScope}
+   */
+  public void setScopes(final Map<String, ? extends Scope> scopes) {
+    this.scopes = scopes;
+  }
+
+  /**
+   * @param objectName name of the MXBean, derived from the id of the application context by default
+   */
+  public void setObjectName(final ObjectName objectName) {
+    this.objectName = objectName;
+  }
+
+  public ObjectName getObjectName() {
+    return objectName;
+  }
+
+  @Override
+  public int getOrder() {
+    // after the QualifiedBeanFactoryConfigurer
+    return Ordered.LOWEST_PRECEDENCE;
+  }
+
+  @Override
+  public void setApplicationContext(final ApplicationContext applicationContext) throws BeansException {
+    if (objectName == null) {
+      try {
+        objectName = new ObjectName(OBJECT_NAME + ",context=" + ObjectName.quote(applicationContext.getId()));
+      } catch (final JMException e) {
+        throw new IllegalStateException("Invalid object name for application context " + applicationContext.getId(), e);
+      }
+    }
+  }
+
+  @Override
+  public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    for (final Map.Entry<String, ? extends Scope> scope : scopes.entrySet()) {
+      beanFactory.registerScope(scope.getKey(), new MonitoredScope(scope.getValue(), this));
+    }
+    if (beanFactory instanceof DefaultListableBeanFactory) {
+      final AutowireCandidateResolver resolver = ((DefaultListableBeanFactory) beanFactory).getAutowireCandidateResolver();
+      if (resolver instanceof CompiledQualifierAutowireCandidateResolver) {
+        ((CompiledQualifierAutowireCandidateResolver) resolver).setMetrics(this);
+      }
+    }
+  }
+
+  public void recordScopeGet(final String name, final boolean miss, final long resolutionNanos) {
+    final String scopedBeanName = scopedBeanName(name);
+    final StripedLongArray counters = counters(scopedBeans, scopedBeanName, 3);
+    counters.increment(GETS);
+    if (miss) {
+      counters.increment(MISSES);
+      counters.increment(LIVE);
+    }
+    counters(latencies, scopedBeanName, HISTOGRAM_BUCKETS).increment(
+        Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, resolutionNanos))));
+  }
+
+  public void recordScopeRemoval(final String name) {
+    counters(scopedBeans, scopedBeanName(name), 3).add(LIVE, -1);
+  }
+
+  /**
+   * @param annotation qualifier annotation of an injection point which matched an autowire candidate
+   */
+  public void recordQualifierMatch(final Annotation annotation) {
+    String key = qualifierKeys.get(annotation);
+    if (key == null) {
+      key = qualifierKey(annotation);
+      if (!qualifiers.containsKey(key) && qualifiers.size() >= MAX_QUALIFIERS) {
+        key = OTHER_QUALIFIERS;
+      }
+      qualifierKeys.putIfAbsent(annotation, key);
+    }
+    counters(qualifiers, key, 1).increment(0);
+  }
+
+  private static Map<String, Long> snapshot(final ConcurrentMap<String, StripedLongArray> counters, final int index) {
+    final Map<String, Long> result = new TreeMap<String, Long>();
+    for (final Map.Entry<String, StripedLongArray> counter : counters.entrySet()) {
+      result.put(counter.getKey(), counter.getValue().get(index));
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getScopeGets() {
+    return snapshot(scopedBeans, GETS);
+  }
+
+  @Override
+  public Map<String, Long> getScopeMisses() {
+    return snapshot(scopedBeans, MISSES);
+  }
+
+  @Override
+  public Map<String, Long> getLiveInstances() {
+    return snapshot(scopedBeans, LIVE);
+  }
+
+  @Override
+  public Map<String, long[]> getTargetResolutionLatencies() {
+    final Map<String, long[]> result = new TreeMap<String, long[]>();
+    for (final Map.Entry<String, StripedLongArray> histogram : latencies.entrySet()) {
+      result.put(histogram.getKey(), histogram.getValue().toArray());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getQualifierResolutions() {
+    return snapshot(qualifiers, 0);
+  }
+
+  /**
+   * Reset all counters except the live instances.
+   */
+  @Override
+  public void reset() {
+    for (final StripedLongArray counters : scopedBeans.values()) {
+      final long live = counters.get(LIVE);
+      counters.reset();
+      counters.add(LIVE, live);
+    }
+    for (final StripedLongArray histogram : latencies.values()) {
+      histogram.reset();
+    }
+    for (final StripedLongArray counter : qualifiers.values()) {
+      counter.reset();
+    }
+  }
+
+  /**
+   * Register with the platform MBean server, the name of another application context's metrics isn't taken over.
+   */
+  @Override
+  public synchronized void afterPropertiesSet() throws JMException {
+    if (objectName == null) {
+      objectName = new ObjectName(OBJECT_NAME + ",context=" + ObjectName.quote(ObjectUtils.getIdentityHexString(this)));
+    }
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    registered = true;
+    LOGGER.debug("Registered MXBean '{}'", objectName);
+  }
+
+  /**
+   * Unregister the MXBean registered by {@link #afterPropertiesSet()}.
+   */
+  @Override
+  public synchronized void destroy() throws JMException {
+    if (registered) {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      registered = false;
+      LOGGER.debug("Unregistered MXBean '{}'", objectName);
+    }
+  }
+}
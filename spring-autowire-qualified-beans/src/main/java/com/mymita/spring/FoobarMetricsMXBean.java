@@ -0,0 +1,39 @@
+package com.mymita.spring;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link FoobarMetrics}. Scoped bean names are the names of the scoped proxies (without the
+ * <code>scopedTarget.</code> prefix).
+ */
+public interface FoobarMetricsMXBean {
+
+  /**
+   * @return scoped bean name to the number of scope lookups
+   */
+  Map<String, Long> getScopeGets();
+
+  /**
+   * @return scoped bean name to the number of scope lookups which created a new object
+   */
+  Map<String, Long> getScopeMisses();
+
+  /**
+   * @return scoped bean name to the number of objects created and not yet removed or destroyed
+   */
+  Map<String, Long> getLiveInstances();
+
+  /**
+   * @return scoped bean name to the histogram of the time the scope took to resolve the target (e.g. for a call through the scoped
+   *         proxy), bucket <code>i</code> counts the
+   *         resolutions which took less than <code>2^i</code> and at least <code>2^(i-1)</code> nanoseconds
+   */
+  Map<String, long[]> getTargetResolutionLatencies();
+
+  /**
+   * @return qualifier (e.g. <code>FoobarContext(FOO)</code>) to the number of autowire candidates it matched
+   */
+  Map<String, Long> getQualifierResolutions();
+
+  void reset();
+}
@@ -4,7 +4,7 @@ import java.util.List;
 
 public class FoobarServiceConsumerImpl implements FoobarServiceConsumer {
 
-  private List<FoobarService> services;
+  private volatile List<FoobarService> services;
 
   public FoobarServiceConsumerImpl(final List<FoobarService> services) {
     this.services = services;
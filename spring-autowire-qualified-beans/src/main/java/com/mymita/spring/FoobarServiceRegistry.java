@@ -0,0 +1,182 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+/**
+ * Registry of the {@link FoobarService}s grouped by {@link ContextType} which can be changed at runtime (e.g. when tenants come and go).
+ * Readers get the lists of an immutable snapshot without locking or copying, writers publish a new snapshot with compare-and-set and
+ * retry if another writer was faster.
+ *
+ * Declared as bean it is populated with the {@link FoobarContext} qualified services of the bean factory.
+ */
+public class FoobarServiceRegistry implements BeanFactoryAware, InitializingBean {
+
+  /**
+   * Notified after the services of a context type have changed.
+   */
+  public interface Listener {
+    void servicesChanged(ContextType contextType, List<FoobarService> services);
+  }
+
+  /**
+   * Immutable services by {@link ContextType#ordinal()} with their list views, computed once per snapshot.
+   */
+  private static final class Snapshot {
+    final FoobarService[][] services;
+    final List<List<FoobarService>> lists;
+    final List<FoobarService> all;
+
+    Snapshot(final FoobarService[][] services) {
+      this.services = services;
+      final List<List<FoobarService>> lists = new ArrayList<List<FoobarService>>(services.length);
+      final List<FoobarService> all = new ArrayList<FoobarService>();
+      for (final FoobarService[] group : services) {
+        final List<FoobarService> list = Arrays.asList(group);
+        lists.add(Collections.unmodifiableList(list));
+        all.addAll(list);
+      }
+      this.lists = lists;
+      this.all = Collections.unmodifiableList(all);
+    }
+
+    Snapshot with(final ContextType contextType, final FoobarService[] group) {
+      final FoobarService[][] result = services.clone();
+      result[contextType.ordinal()] = group;
+      return new Snapshot(result);
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FoobarServiceRegistry.class);
+
+  private static int indexOf(final FoobarService[] services, final FoobarService service) {
+    for (int i = 0; i < services.length; i++) {
+      if (services[i] == service) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>(
+      new Snapshot(new FoobarService[ContextType.values().length][0]));
+
+  private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  private ConfigurableListableBeanFactory beanFactory;
+
+  @Override
+  public void setBeanFactory(final BeanFactory beanFactory) throws BeansException {
+    this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    final Map<ContextType, List<String>> beanNames = FoobarContextUtils.serviceBeanNamesByContextType(beanFactory);
+    for (final Map.Entry<ContextType, List<String>> entry : beanNames.entrySet()) {
+      for (final String beanName : entry.getValue()) {
+        register(entry.getKey(), beanFactory.getBean(beanName, FoobarService.class));
+        LOGGER.debug("Registered service '{}' for context {}", beanName, entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * @return the services of the given context type (unmodifiable snapshot)
+   */
+  public List<FoobarService> getServices(final ContextType contextType) {
+    return snapshot.get().lists.get(contextType.ordinal());
+  }
+
+  /**
+   * @return the services of all context types (unmodifiable snapshot)
+   */
+  public List<FoobarService> getServices() {
+    return snapshot.get().all;
+  }
+
+  /**
+   * @return <code>false</code> if the service is already registered for the context type
+   */
+  public boolean register(final ContextType contextType, final FoobarService service) {
+    Snapshot current;
+    Snapshot next;
+    do {
+      current = snapshot.get();
+      final FoobarService[] group = current.services[contextType.ordinal()];
+      if (indexOf(group, service) >= 0) {
+        return false;
+      }
+      final FoobarService[] changed = Arrays.copyOf(group, group.length + 1);
+      changed[group.length] = service;
+      next = current.with(contextType, changed);
+    } while (!snapshot.compareAndSet(current, next));
+    fireServicesChanged(contextType, next);
+    return true;
+  }
+
+  /**
+   * @return <code>false</code> if the service isn't registered for the context type
+   */
+  public boolean unregister(final ContextType contextType, final FoobarService service) {
+    Snapshot current;
+    Snapshot next;
+    do {
+      current = snapshot.get();
+      final FoobarService[] group = current.services[contextType.ordinal()];
+      final int index = indexOf(group, service);
+      if (index < 0) {
+        return false;
+      }
+      final FoobarService[] changed = new FoobarService[group.length - 1];
+      System.arraycopy(group, 0, changed, 0, index);
+      System.arraycopy(group, index + 1, changed, index, changed.length - index);
+      next = current.with(contextType, changed);
+    } while (!snapshot.compareAndSet(current, next));
+    fireServicesChanged(contextType, next);
+    return true;
+  }
+
+  /**
+   * Concurrent changes may be notified out of order, listeners interested in the latest services should read
+   * {@link #getServices(ContextType)}.
+   */
+  public void addListener(final Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(final Listener listener) {
+    listeners.remove(listener);
+  }
+
+  private void fireServicesChanged(final ContextType contextType, final Snapshot published) {
+    final List<FoobarService> services = published.lists.get(contextType.ordinal());
+    for (final Listener listener : listeners) {
+      try {
+        listener.servicesChanged(contextType, services);
+      } catch (final RuntimeException e) {
+        LOGGER.warn("Listener " + listener + " failed", e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FoobarServiceRegistry " + snapshot.get().lists;
+  }
+}
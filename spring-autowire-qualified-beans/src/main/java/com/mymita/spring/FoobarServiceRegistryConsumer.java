@@ -0,0 +1,29 @@
+package com.mymita.spring;
+
+import java.util.List;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+/**
+ * {@link FoobarServiceConsumer} which reads the current services of a context type (or all services) from a
+ * {@link FoobarServiceRegistry}, so it sees services registered at runtime.
+ */
+public class FoobarServiceRegistryConsumer implements FoobarServiceConsumer {
+
+  private final FoobarServiceRegistry registry;
+
+  private final ContextType contextType;
+
+  /**
+   * @param contextType context type of the services or <code>null</code> for all services
+   */
+  public FoobarServiceRegistryConsumer(final FoobarServiceRegistry registry, final ContextType contextType) {
+    this.registry = registry;
+    this.contextType = contextType;
+  }
+
+  @Override
+  public List<FoobarService> getServices() {
+    return contextType == null ? registry.getServices() : registry.getServices(contextType);
+  }
+}
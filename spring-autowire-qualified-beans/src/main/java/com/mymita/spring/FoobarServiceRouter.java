@@ -0,0 +1,151 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+/**
+ * Routes to the {@link FoobarService}s of a {@link ContextType}. The delegates are resolved once from the {@link FoobarContext}
+ * qualifiers of the bean definitions and held in arrays indexed by {@link ContextType#ordinal()}, so routing doesn't touch the bean
+ * factory.
+ *
+ * {@link #routeAll(ContextType)} returns the whole group of a context type, i.e. the services a consumer qualified with the same
+ * {@link FoobarContext} gets injected. {@link #route(ContextType)} returns a single service, the only one of the group or its primary
+ * one. Like for the injection into the consumers, scoped beans without scoped proxy are resolved once, so their first target instance
+ * is held forever.
+ *
+ * The router isn't a {@link FoobarService} itself, so it's no candidate for the injection of the services.
+ */
+public class FoobarServiceRouter implements BeanFactoryAware, InitializingBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FoobarServiceRouter.class);
+
+  private static final List<FoobarService> NONE = Collections.emptyList();
+
+  private ConfigurableListableBeanFactory beanFactory;
+
+  private List<FoobarService>[] groups;
+
+  /** the only or primary service of each group, <code>null</code> if there's none or the group is ambiguous */
+  private FoobarService[] delegates;
+
+  @Override
+  public void setBeanFactory(final BeanFactory beanFactory) throws BeansException {
+    this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void afterPropertiesSet() {
+    final Map<ContextType, List<String>> candidates = FoobarContextUtils.serviceBeanNamesByContextType(beanFactory);
+    final List<FoobarService>[] resultGroups = new List[ContextType.values().length];
+    final FoobarService[] resultDelegates = new FoobarService[ContextType.values().length];
+    Arrays.fill(resultGroups, NONE);
+    for (final Map.Entry<ContextType, List<String>> entry : candidates.entrySet()) {
+      final ContextType contextType = entry.getKey();
+      final List<FoobarService> group = new ArrayList<FoobarService>(entry.getValue().size());
+      for (final String beanName : entry.getValue()) {
+        if (!beanFactory.isSingleton(beanName)) {
+          LOGGER.warn("FoobarService '{}' for context {} is not a singleton, route to its current instance, "
+              + "use a scoped proxy to route to the instance of each scope", beanName, contextType);
+        }
+        group.add(beanFactory.getBean(beanName, FoobarService.class));
+      }
+      resultGroups[contextType.ordinal()] = Collections.unmodifiableList(group);
+      final int delegate = delegateFor(entry.getValue());
+      if (delegate >= 0) {
+        resultDelegates[contextType.ordinal()] = group.get(delegate);
+      }
+      LOGGER.debug("Route context {} to services {}", contextType, entry.getValue());
+    }
+    groups = resultGroups;
+    delegates = resultDelegates;
+  }
+
+  /**
+   * @return index of the only or the primary candidate, <code>-1</code> if there's no or more than one primary candidate
+   */
+  private int delegateFor(final List<String> candidates) {
+    if (candidates.size() == 1) {
+      return 0;
+    }
+    int primary = -1;
+    for (int i = 0; i < candidates.size(); i++) {
+      if (beanFactory.getMergedBeanDefinition(candidates.get(i)).isPrimary()) {
+        if (primary >= 0) {
+          return -1;
+        }
+        primary = i;
+      }
+    }
+    return primary;
+  }
+
+  /**
+   * @return the services for the given context type in registration order, empty if there are none
+   */
+  public List<FoobarService> routeAll(final ContextType contextType) {
+    return groups[contextType.ordinal()];
+  }
+
+  /**
+   * @return the only or the primary service for the given context type
+   * @throws IllegalStateException if there's no service or several services but not exactly one primary service, use
+   *           {@link #routeAll(ContextType)} for such groups
+   */
+  public FoobarService route(final ContextType contextType) {
+    final FoobarService delegate = delegates[contextType.ordinal()];
+    if (delegate == null) {
+      final List<FoobarService> group = groups[contextType.ordinal()];
+      if (group.isEmpty()) {
+        throw new IllegalStateException("No FoobarService for context " + contextType);
+      }
+      throw new IllegalStateException(String.format("More than one FoobarService for context %s but not exactly one is primary: %s",
+          contextType, group));
+    }
+    return delegate;
+  }
+
+  /**
+   * @return the service for the context type of the current request
+   * @see FoobarContextHolder
+   * @see #route(ContextType)
+   */
+  public FoobarService current() {
+    return route(currentContextType());
+  }
+
+  /**
+   * @return the services for the context type of the current request
+   * @see FoobarContextHolder
+   * @see #routeAll(ContextType)
+   */
+  public List<FoobarService> currentAll() {
+    return routeAll(currentContextType());
+  }
+
+  private static ContextType currentContextType() {
+    final ContextType contextType = FoobarContextHolder.get();
+    if (contextType == null) {
+      throw new IllegalStateException("No context type bound to the current thread");
+    }
+    return contextType;
+  }
+
+  @Override
+  public String toString() {
+    return "FoobarServiceRouter " + Arrays.toString(groups);
+  }
+}
@@ -0,0 +1,72 @@
+package com.mymita.spring;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.Scope;
+
+/**
+ * {@link Scope} decorator recording the lookups (and their latency), created objects and removed or destroyed objects of the decorated
+ * scope into {@link FoobarMetrics}. Objects without destruction callback (e.g. in a
+ * {@link org.springframework.context.support.SimpleThreadScope}) are only counted as gone when they are removed.
+ *
+ * The scopes passed to {@link FoobarMetrics#setScopes(java.util.Map)} are decorated and registered by the metrics.
+ */
+public class MonitoredScope implements Scope {
+
+  private final Scope scope;
+
+  private final FoobarMetrics metrics;
+
+  public MonitoredScope(final Scope scope, final FoobarMetrics metrics) {
+    this.scope = scope;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Object get(final String name, final ObjectFactory<?> objectFactory) {
+    final boolean[] created = new boolean[1];
+    final long start = System.nanoTime();
+    final Object result = scope.get(name, new ObjectFactory<Object>() {
+      @Override
+      public Object getObject() {
+        created[0] = true;
+        return objectFactory.getObject();
+      }
+    });
+    metrics.recordScopeGet(name, created[0], System.nanoTime() - start);
+    return result;
+  }
+
+  @Override
+  public Object remove(final String name) {
+    final Object result = scope.remove(name);
+    if (result != null) {
+      metrics.recordScopeRemoval(name);
+    }
+    return result;
+  }
+
+  @Override
+  public void registerDestructionCallback(final String name, final Runnable callback) {
+    scope.registerDestructionCallback(name, new Runnable() {
+      @Override
+      public void run() {
+        metrics.recordScopeRemoval(name);
+        callback.run();
+      }
+    });
+  }
+
+  @Override
+  public Object resolveContextualObject(final String key) {
+    return scope.resolveContextualObject(key);
+  }
+
+  @Override
+  public String getConversationId() {
+    return scope.getConversationId();
+  }
+
+  public Scope getScope() {
+    return scope;
+  }
+}
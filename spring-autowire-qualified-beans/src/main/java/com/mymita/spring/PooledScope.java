@@ -0,0 +1,452 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.TargetSource;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.target.AbstractBeanFactoryBasedTargetSource;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.Scope;
+
+/**
+ * {@link Scope} which hands out objects from a bounded pool per bean name instead of creating one object per thread. An object is
+ * borrowed on first access within a span and returned to the pool when the outermost span ends. A span is a request bracketed by
+ * {@link #begin()}/{@link #end()} or {@link #execute(Callable)}, all calls of a span use the same borrowed object. Without such a span
+ * each call of a scoped proxy (<code>ScopedProxyMode.INTERFACES</code> or <code>TARGET_CLASS</code>) is a span of its own, so the
+ * object is borrowed for the single call. Declared as bean the scope registers itself as {@link #setScopeName(String) scope name} and
+ * installs the per-call spans for the Spring AOP scoped proxies of its beans (not for the {@link CachingScopedProxyFactoryBean}
+ * proxies).
+ *
+ * <pre>
+ * &#064;Bean
+ * static PooledScope pooledScope() {
+ *   final PooledScope scope = new PooledScope();
+ *   scope.setScopeName(&quot;pooled&quot;);
+ *   return scope;
+ * }
+ *
+ * &#064;Bean
+ * &#064;Scope(value = "pooled", proxyMode = ScopedProxyMode.INTERFACES)
+ * FoobarService service() { ... }
+ * </pre>
+ *
+ * Idle objects are kept in a lock-free queue, the maximum number of borrowed objects is bounded by a semaphore. Every object is created
+ * while holding a permit, so a pool never holds more than {@link #setMaxSize(int) maxSize} objects. The first access of a bean name
+ * warms up the pool with {@link #setMinSize(int) minSize} objects and objects destroyed because they are invalid are replaced up to
+ * that size.
+ */
+public class PooledScope implements Scope, BeanFactoryPostProcessor, DisposableBean {
+
+  /**
+   * Validates idle objects before they are borrowed, invalid objects are destroyed.
+   */
+  public interface Validator {
+    boolean isValid(String name, Object object);
+  }
+
+  private static final class PooledObject {
+    final Object object;
+    Runnable destructionCallback;
+
+    PooledObject(final Object object) {
+      this.object = object;
+    }
+  }
+
+  private static final class Pool {
+    final ConcurrentLinkedQueue<PooledObject> idle = new ConcurrentLinkedQueue<PooledObject>();
+    final Semaphore permits;
+    /** number of idle, borrowed and created objects */
+    final AtomicInteger size = new AtomicInteger();
+
+    Pool(final int maxSize) {
+      permits = new Semaphore(maxSize);
+    }
+  }
+
+  /**
+   * Target source of a scoped proxy which runs each call within a span, nested in the span of the calling thread if there is one.
+   */
+  private final class SpanTargetSource implements TargetSource {
+
+    private final TargetSource targetSource;
+
+    SpanTargetSource(final TargetSource targetSource) {
+      this.targetSource = targetSource;
+    }
+
+    @Override
+    public Class<?> getTargetClass() {
+      return targetSource.getTargetClass();
+    }
+
+    @Override
+    public boolean isStatic() {
+      return false;
+    }
+
+    @Override
+    public Object getTarget() throws Exception {
+      begin();
+      try {
+        return targetSource.getTarget();
+      } catch (final Exception e) {
+        // the proxy releases only targets it got
+        end();
+        throw e;
+      } catch (final Error e) {
+        end();
+        throw e;
+      }
+    }
+
+    @Override
+    public void releaseTarget(final Object target) throws Exception {
+      end();
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PooledScope.class);
+
+  private final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<String, Pool>();
+
+  /** objects borrowed in the current span */
+  private final ThreadLocal<Map<String, PooledObject>> leases = new ThreadLocal<Map<String, PooledObject>>();
+
+  private final ThreadLocal<int[]> spanDepth = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+
+  /** destruction callbacks are registered while an object is created */
+  private final ThreadLocal<List<PooledObject>> creating = new ThreadLocal<List<PooledObject>>() {
+    @Override
+    protected List<PooledObject> initialValue() {
+      return new ArrayList<PooledObject>();
+    }
+  };
+
+  private String scopeName;
+
+  private int minSize;
+
+  private int maxSize = 8;
+
+  private long borrowTimeoutMillis = 1000;
+
+  private Validator validator;
+
+  private volatile boolean destroyed;
+
+  /**
+   * @param scopeName name to register the scope as if declared as bean, <code>null</code> (default) if it's registered otherwise, e.g.
+   *          by a {@link org.springframework.beans.factory.config.CustomScopeConfigurer}
+   */
+  public void setScopeName(final String scopeName) {
+    this.scopeName = scopeName;
+  }
+
+  /**
+   * @param minSize number of objects created when a pool is first used and kept when invalid objects are destroyed, at most
+   *          {@link #setMaxSize(int) maxSize}
+   */
+  public void setMinSize(final int minSize) {
+    this.minSize = minSize;
+  }
+
+  /**
+   * @param maxSize maximum number of objects per bean name
+   */
+  public void setMaxSize(final int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @param borrowTimeoutMillis time to wait for an object if all are borrowed
+   */
+  public void setBorrowTimeoutMillis(final long borrowTimeoutMillis) {
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+  }
+
+  public void setValidator(final Validator validator) {
+    this.validator = validator;
+  }
+
+  /**
+   * Register the scope and install the per-call spans of the scoped proxies.
+   */
+  @Override
+  public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    if (scopeName != null) {
+      beanFactory.registerScope(scopeName, this);
+    }
+    beanFactory.addBeanPostProcessor(new BeanPostProcessor() {
+
+      @Override
+      public Object postProcessBeforeInitialization(final Object bean, final String beanName) {
+        return bean;
+      }
+
+      @Override
+      public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+        if (bean instanceof Advised) {
+          final Advised advised = (Advised) bean;
+          final TargetSource targetSource = advised.getTargetSource();
+          if (targetSource instanceof AbstractBeanFactoryBasedTargetSource) {
+            final String targetBeanName = ((AbstractBeanFactoryBasedTargetSource) targetSource).getTargetBeanName();
+            if (beanFactory.containsBeanDefinition(targetBeanName)
+                && beanFactory.getRegisteredScope(beanFactory.getMergedBeanDefinition(targetBeanName).getScope()) == PooledScope.this) {
+              advised.setTargetSource(new SpanTargetSource(targetSource));
+              LOGGER.debug("Borrow pooled object '{}' per call of scoped proxy '{}'", targetBeanName, beanName);
+            }
+          }
+        }
+        return bean;
+      }
+    });
+  }
+
+  /**
+   * Begin a span of the current thread, spans can be nested.
+   */
+  public void begin() {
+    spanDepth.get()[0]++;
+  }
+
+  /**
+   * End a span of the current thread, the outermost span returns the borrowed objects to their pools.
+   */
+  public void end() {
+    final int[] depth = spanDepth.get();
+    if (depth[0] == 0) {
+      throw new IllegalStateException("No active span");
+    }
+    if (--depth[0] > 0) {
+      return;
+    }
+    final Map<String, PooledObject> borrowed = leases.get();
+    leases.remove();
+    if (borrowed != null) {
+      for (final Map.Entry<String, PooledObject> lease : borrowed.entrySet()) {
+        giveBack(lease.getKey(), lease.getValue());
+      }
+    }
+  }
+
+  /**
+   * Execute the given callable within a span.
+   */
+  public <T> T execute(final Callable<T> callable) throws Exception {
+    begin();
+    try {
+      return callable.call();
+    } finally {
+      end();
+    }
+  }
+
+  @Override
+  public Object get(final String name, final ObjectFactory<?> objectFactory) {
+    if (spanDepth.get()[0] == 0) {
+      throw new IllegalStateException(String.format("No active span to borrow pooled object '%s', use a scoped proxy or %s.execute()",
+          name, PooledScope.class.getSimpleName()));
+    }
+    Map<String, PooledObject> borrowed = leases.get();
+    if (borrowed == null) {
+      borrowed = new HashMap<String, PooledObject>(4);
+      leases.set(borrowed);
+    }
+    PooledObject lease = borrowed.get(name);
+    if (lease == null) {
+      lease = borrow(name, objectFactory);
+      borrowed.put(name, lease);
+    }
+    return lease.object;
+  }
+
+  private Pool pool(final String name, final ObjectFactory<?> objectFactory) {
+    Pool pool = pools.get(name);
+    if (pool == null) {
+      final Pool created = new Pool(maxSize);
+      pool = pools.putIfAbsent(name, created);
+      if (pool == null) {
+        pool = created;
+        fill(pool, objectFactory);
+        LOGGER.debug("Created pool for scoped object '{}' with {} objects", name, pool.idle.size());
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Create idle objects until the pool has {@link #setMinSize(int) minSize} objects. Each object is created holding a permit like a
+   * borrowed one, the filling stops if all permits are taken.
+   */
+  private void fill(final Pool pool, final ObjectFactory<?> objectFactory) {
+    while (true) {
+      final int size = pool.size.get();
+      if (size >= minSize || !pool.permits.tryAcquire()) {
+        return;
+      }
+      try {
+        if (pool.size.compareAndSet(size, size + 1)) {
+          boolean added = false;
+          try {
+            pool.idle.add(create(objectFactory));
+            added = true;
+          } finally {
+            if (!added) {
+              pool.size.decrementAndGet();
+            }
+          }
+        }
+      } finally {
+        pool.permits.release();
+      }
+    }
+  }
+
+  private PooledObject create(final ObjectFactory<?> objectFactory) {
+    final List<PooledObject> inCreation = creating.get();
+    final PooledObject placeholder = new PooledObject(null);
+    inCreation.add(placeholder);
+    try {
+      final PooledObject result = new PooledObject(objectFactory.getObject());
+      result.destructionCallback = placeholder.destructionCallback;
+      return result;
+    } finally {
+      inCreation.remove(inCreation.size() - 1);
+    }
+  }
+
+  private PooledObject borrow(final String name, final ObjectFactory<?> objectFactory) {
+    final Pool pool = pool(name, objectFactory);
+    try {
+      if (!pool.permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new IllegalStateException(String.format("Pool for scoped object '%s' exhausted (max %s)", name, maxSize));
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while borrowing pooled object '" + name + "'", e);
+    }
+    try {
+      PooledObject pooled;
+      while ((pooled = pool.idle.poll()) != null) {
+        if (validator == null || validator.isValid(name, pooled.object)) {
+          return pooled;
+        }
+        LOGGER.debug("Destroy invalid pooled object '{}'", name);
+        destroy(name, pool, pooled);
+        fill(pool, objectFactory);
+      }
+      pooled = create(objectFactory);
+      pool.size.incrementAndGet();
+      return pooled;
+    } catch (final RuntimeException e) {
+      pool.permits.release();
+      throw e;
+    }
+  }
+
+  private void giveBack(final String name, final PooledObject pooled) {
+    final Pool pool = pools.get(name);
+    if (destroyed || pool == null) {
+      destroy(name, pool, pooled);
+    } else {
+      pool.idle.add(pooled);
+    }
+    if (pool != null) {
+      pool.permits.release();
+    }
+  }
+
+  private void destroy(final String name, final Pool pool, final PooledObject pooled) {
+    if (pool != null) {
+      pool.size.decrementAndGet();
+    }
+    if (pooled.destructionCallback != null) {
+      try {
+        pooled.destructionCallback.run();
+      } catch (final RuntimeException e) {
+        LOGGER.warn("Destruction callback for pooled object '" + name + "' failed", e);
+      }
+    }
+  }
+
+  /**
+   * Borrowed objects are returned at the end of the span, so removing them from the scope isn't supported.
+   */
+  @Override
+  public Object remove(final String name) {
+    return null;
+  }
+
+  @Override
+  public void registerDestructionCallback(final String name, final Runnable callback) {
+    final List<PooledObject> inCreation = creating.get();
+    if (inCreation.isEmpty()) {
+      LOGGER.warn("Can't register destruction callback for pooled object '{}' outside of its creation", name);
+    } else {
+      inCreation.get(inCreation.size() - 1).destructionCallback = callback;
+    }
+  }
+
+  @Override
+  public Object resolveContextualObject(final String key) {
+    return null;
+  }
+
+  @Override
+  public String getConversationId() {
+    return null;
+  }
+
+  /**
+   * @return number of idle objects of the given bean name
+   */
+  public int getIdleCount(final String name) {
+    final Pool pool = pools.get(name);
+    return pool == null ? 0 : pool.idle.size();
+  }
+
+  /**
+   * @return number of idle and borrowed objects of the given bean name
+   */
+  public int getSize(final String name) {
+    final Pool pool = pools.get(name);
+    return pool == null ? 0 : pool.size.get();
+  }
+
+  /**
+   * Destroy all idle objects, borrowed objects are destroyed when they are returned.
+   */
+  @Override
+  public void destroy() {
+    destroyed = true;
+    for (final Map.Entry<String, Pool> pool : pools.entrySet()) {
+      PooledObject pooled;
+      while ((pooled = pool.getValue().idle.poll()) != null) {
+        destroy(pool.getKey(), pool.getValue(), pooled);
+      }
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.mymita.spring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.scope.ScopedProxyFactoryBean;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.QualifierAnnotationAutowireCandidateResolver;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.CglibSubclassingInstantiationStrategy;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.InstantiationStrategyAccessor;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+
+/**
+ * Opt-in installation of the optimized bean factory infrastructure. Installs the {@link CompiledQualifierAutowireCandidateResolver}
+ * which uses the qualifier matchers compiled when the <code>@Bean</code> definitions are loaded. Nothing is replaced if the bean
+ * factory was already customized, i.e. a resolver other than the default {@link QualifierAnnotationAutowireCandidateResolver} is set.
+ * Optionally the {@link ScopedProxyFactoryBean}s of the scoped proxies are replaced by {@link CachingScopedProxyFactoryBean}s and the
+ * default instantiation strategy by the {@link FastFactoryMethodInstantiationStrategy}.
+ *
+ * Declare it as static <code>@Bean</code> method of a configuration class or register it as context initializer.
+ *
+ * <pre>
+ * &#064;Bean
+ * static QualifiedBeanFactoryConfigurer qualifiedBeanFactoryConfigurer() {
+ *   return new QualifiedBeanFactoryConfigurer();
+ * }
+ * </pre>
+ */
+public class QualifiedBeanFactoryConfigurer implements BeanFactoryPostProcessor, PriorityOrdered,
+    ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(QualifiedBeanFactoryConfigurer.class);
+
+  private boolean compiledQualifiers = true;
+
+  private boolean cachingScopedProxies;
+
+  private boolean fastFactoryMethods;
+
+  private int order = Ordered.HIGHEST_PRECEDENCE;
+
+  /**
+   * @param compiledQualifiers <code>true</code> (default) to install the {@link CompiledQualifierAutowireCandidateResolver}
+   */
+  public void setCompiledQualifiers(final boolean compiledQualifiers) {
+    this.compiledQualifiers = compiledQualifiers;
+  }
+
+  /**
+   * @param cachingScopedProxies <code>true</code> to create the scoped proxies with {@link CachingScopedProxyFactoryBean}, which reuses
+   *          the proxy classes across application contexts but creates no Spring AOP proxies (default <code>false</code>)
+   */
+  public void setCachingScopedProxies(final boolean cachingScopedProxies) {
+    this.cachingScopedProxies = cachingScopedProxies;
+  }
+
+  /**
+   * @param fastFactoryMethods <code>true</code> to invoke the factory methods through the {@link FastFactoryMethodInstantiationStrategy},
+   *          only if the default {@link CglibSubclassingInstantiationStrategy} is set (default <code>false</code>)
+   */
+  public void setFastFactoryMethods(final boolean fastFactoryMethods) {
+    this.fastFactoryMethods = fastFactoryMethods;
+  }
+
+  public void setOrder(final int order) {
+    this.order = order;
+  }
+
+  @Override
+  public int getOrder() {
+    return order;
+  }
+
+  @Override
+  public void initialize(final ConfigurableApplicationContext applicationContext) {
+    applicationContext.addBeanFactoryPostProcessor(this);
+  }
+
+  @Override
+  public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    if (cachingScopedProxies) {
+      replaceScopedProxyFactoryBeans(beanFactory);
+    }
+    if (!(beanFactory instanceof DefaultListableBeanFactory)) {
+      return;
+    }
+    final DefaultListableBeanFactory defaultListableBeanFactory = (DefaultListableBeanFactory) beanFactory;
+    if (compiledQualifiers
+        && defaultListableBeanFactory.getAutowireCandidateResolver().getClass() == QualifierAnnotationAutowireCandidateResolver.class) {
+      final CompiledQualifierAutowireCandidateResolver resolver = new CompiledQualifierAutowireCandidateResolver();
+      defaultListableBeanFactory.setAutowireCandidateResolver(resolver);
+      LOGGER.debug("Installed {}", resolver);
+    }
+    if (fastFactoryMethods
+        && InstantiationStrategyAccessor.getInstantiationStrategy(defaultListableBeanFactory).getClass() == CglibSubclassingInstantiationStrategy.class) {
+      defaultListableBeanFactory.setInstantiationStrategy(new FastFactoryMethodInstantiationStrategy());
+      LOGGER.debug("Installed {}", FastFactoryMethodInstantiationStrategy.class.getSimpleName());
+    }
+  }
+
+  private void replaceScopedProxyFactoryBeans(final ConfigurableListableBeanFactory beanFactory) {
+    for (final String beanName : beanFactory.getBeanDefinitionNames()) {
+      final BeanDefinition bd = beanFactory.getBeanDefinition(beanName);
+      if (bd instanceof AbstractBeanDefinition && ScopedProxyFactoryBean.class.getName().equals(bd.getBeanClassName())) {
+        // same properties, reuses the generated proxy classes across application contexts
+        ((AbstractBeanDefinition) bd).setBeanClass(CachingScopedProxyFactoryBean.class);
+        LOGGER.debug("Create scoped proxy '{}' with {}", beanName, CachingScopedProxyFactoryBean.class.getSimpleName());
+      }
+    }
+  }
+}
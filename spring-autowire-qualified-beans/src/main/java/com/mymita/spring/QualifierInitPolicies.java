@@ -0,0 +1,16 @@
+package com.mymita.spring;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Container for several {@link QualifierInitPolicy} declarations on one configuration class, the first matching policy wins.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QualifierInitPolicies {
+
+  QualifierInitPolicy[] value();
+}
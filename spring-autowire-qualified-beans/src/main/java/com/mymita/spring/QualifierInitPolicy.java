@@ -0,0 +1,55 @@
+package com.mymita.spring;
+
+import java.lang.annotation.Annotation;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares how the {@code @Bean} methods of the annotated configuration class are initialized based on their qualifier (evaluated when
+ * <code>ConfigurationClassBeanDefinitionReader</code> registers the bean definitions).
+ *
+ * <pre>
+ * &#064;Configuration
+ * &#064;QualifierInitPolicy(qualifier = FoobarContext.class, values = "BAR", mode = Mode.SKIP, profiles = "foo-node")
+ * class Config { ... }
+ * </pre>
+ *
+ * An explicit {@code @Lazy} on the bean method always wins over a matching policy.
+ *
+ * @see QualifierInitPolicies
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QualifierInitPolicy {
+
+  public enum Mode {
+    /** register the bean definition as lazy-init */
+    LAZY,
+    /** don't register the bean definition at all */
+    SKIP
+  }
+
+  /**
+   * The qualifier annotation type the bean method must be annotated with.
+   */
+  Class<? extends Annotation> qualifier();
+
+  /**
+   * The qualifier attribute compared against {@link #values()}.
+   */
+  String attribute() default "value";
+
+  /**
+   * The attribute values (enum constant names or string representation) the policy applies to, empty for any value.
+   */
+  String[] values() default {};
+
+  Mode mode() default Mode.LAZY;
+
+  /**
+   * The policy is only active if one of these profiles is active, empty for always.
+   */
+  String[] profiles() default {};
+}
@@ -0,0 +1,175 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+/**
+ * Creates the objects of thread-bound scopes (e.g. the targets of the <code>foobarScope</code> proxies) on a thread before it takes
+ * traffic, so the first call through a scoped proxy doesn't pay for the creation of its target.
+ *
+ * The beans to warm are selected by {@link #setScopeNames(Set) scope name} (all scopes except singleton and prototype by default) and
+ * optionally by {@link #setContextTypes(Set) context type} of their {@link FoobarContext} qualifier. Warm a thread with
+ * {@link #warmCurrentThread()}, every thread of a pool with {@link #warmingThreadFactory(ThreadFactory)} or the threads of an existing
+ * pool with {@link #warm(ExecutorService, int)}.
+ */
+public class ScopedTargetWarmer implements BeanFactoryAware {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScopedTargetWarmer.class);
+
+  private ConfigurableListableBeanFactory beanFactory;
+
+  private Set<String> scopeNames = Collections.emptySet();
+
+  private Set<ContextType> contextTypes = Collections.emptySet();
+
+  private long timeoutMillis = 10000;
+
+  private volatile String[] beanNames;
+
+  @Override
+  public void setBeanFactory(final BeanFactory beanFactory) throws BeansException {
+    this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+  }
+
+  /**
+   * @param scopeNames scopes to warm, empty for all scopes except singleton and prototype
+   */
+  public void setScopeNames(final Set<String> scopeNames) {
+    this.scopeNames = scopeNames;
+  }
+
+  /**
+   * @param contextTypes context types of the beans to warm, empty for all beans
+   */
+  public void setContextTypes(final Set<ContextType> contextTypes) {
+    this.contextTypes = contextTypes;
+  }
+
+  /**
+   * @param timeoutMillis time {@link #warm(ExecutorService, int)} waits for the pool threads
+   */
+  public void setTimeoutMillis(final long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * @return names of the beans to warm, resolved once from the bean definitions
+   */
+  public String[] getBeanNames() {
+    String[] result = beanNames;
+    if (result == null) {
+      final List<String> names = new ArrayList<String>();
+      for (final String beanName : beanFactory.getBeanDefinitionNames()) {
+        final BeanDefinition bd = beanFactory.getMergedBeanDefinition(beanName);
+        if (bd.isAbstract() || bd.isSingleton() || bd.isPrototype()) {
+          continue;
+        }
+        if (!scopeNames.isEmpty() && !scopeNames.contains(bd.getScope())) {
+          continue;
+        }
+        if (!contextTypes.isEmpty() && !contextTypes.contains(FoobarContextUtils.contextTypeOf(bd))) {
+          continue;
+        }
+        names.add(beanName);
+      }
+      result = names.toArray(new String[names.size()]);
+      LOGGER.debug("Warm scoped beans {}", names);
+      beanNames = result;
+    }
+    return result;
+  }
+
+  /**
+   * Create the scoped objects for the current thread, beans which fail are logged and skipped.
+   *
+   * @return number of warmed beans
+   */
+  public int warmCurrentThread() {
+    int warmed = 0;
+    for (final String beanName : getBeanNames()) {
+      try {
+        beanFactory.getBean(beanName);
+        warmed++;
+      } catch (final BeansException e) {
+        LOGGER.warn("Can't warm scoped bean '" + beanName + "'", e);
+      }
+    }
+    return warmed;
+  }
+
+  /**
+   * @return thread factory warming each thread of the given factory before it runs its first task
+   */
+  public ThreadFactory warmingThreadFactory(final ThreadFactory threadFactory) {
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        return threadFactory.newThread(new Runnable() {
+          @Override
+          public void run() {
+            warmCurrentThread();
+            r.run();
+          }
+        });
+      }
+    };
+  }
+
+  /**
+   * Warm the given number of threads of the executor, each task holds its thread until all tasks are running so that every task runs on
+   * a different thread. The executor must have at least that many threads.
+   *
+   * @return number of warmed beans of all threads
+   */
+  public int warm(final ExecutorService executor, final int threads) throws InterruptedException {
+    final CountDownLatch running = new CountDownLatch(threads);
+    final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(threads);
+    for (int i = 0; i < threads; i++) {
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws InterruptedException {
+          final int warmed = warmCurrentThread();
+          running.countDown();
+          if (!running.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            LOGGER.warn("Not all of {} threads could be warmed within {} ms", threads, timeoutMillis);
+          }
+          return warmed;
+        }
+      });
+    }
+    int warmed = 0;
+    for (final Future<Integer> result : executor.invokeAll(tasks)) {
+      try {
+        warmed += result.get();
+      } catch (final ExecutionException e) {
+        LOGGER.warn("Can't warm thread", e.getCause());
+      }
+    }
+    return warmed;
+  }
+
+  @Override
+  public String toString() {
+    return "ScopedTargetWarmer " + Arrays.toString(beanNames);
+  }
+}
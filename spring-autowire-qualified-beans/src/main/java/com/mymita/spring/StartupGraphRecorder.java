@@ -0,0 +1,382 @@
+package com.mymita.spring;
+
+import java.beans.PropertyDescriptor;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.PropertyValues;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Records the bean definition graph (factory bean, <code>@DependsOn</code>, injected and scoped-proxy target links) together with the
+ * instantiation time of each bean and computes the critical path, i.e. the chain of beans which gates the startup. The result is written
+ * as JSON to {@link #setOutputFile(File) outputFile} when the context is refreshed.
+ *
+ * The time of a bean is measured from {@link #postProcessBeforeInstantiation(Class, String)} to
+ * {@link #postProcessAfterInitialization(Object, String)} minus the time of the beans created meanwhile. Factory method beans
+ * (<code>@Bean</code> methods) don't get the first callback, their time is approximated by the time since the previous creation event
+ * of the thread, so it may include work of the enclosing bean (e.g. resolving its other arguments). Beans created before the first event
+ * aren't timed.
+ *
+ * Register it with a static <code>@Bean</code> method so that it's in place before the other beans are created.
+ */
+public class StartupGraphRecorder implements InstantiationAwareBeanPostProcessor, BeanFactoryAware,
+    ApplicationListener<ContextRefreshedEvent>, PriorityOrdered {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StartupGraphRecorder.class);
+
+  /**
+   * Bean whose creation started with {@link #postProcessBeforeInstantiation(Class, String)}.
+   */
+  private static final class Frame {
+    final String beanName;
+    final long start;
+    /** time spent in the creation of nested beans */
+    long nestedNanos;
+
+    Frame(final String beanName, final long start) {
+      this.beanName = beanName;
+      this.start = start;
+    }
+  }
+
+  /**
+   * Bean creation state of a thread. Beans are created depth first, so the frames form a stack.
+   */
+  private static final class CreationState {
+    final Deque<Frame> frames = new ArrayDeque<Frame>();
+    /** time of the last creation event, <code>0</code> before the first event */
+    long lastEvent;
+  }
+
+  private final ThreadLocal<CreationState> creationState = new ThreadLocal<CreationState>() {
+    @Override
+    protected CreationState initialValue() {
+      return new CreationState();
+    }
+  };
+
+  /** bean name to the time spent in the first instantiation (excluding its dependencies) */
+  private final ConcurrentMap<String, Long> timings = new ConcurrentHashMap<String, Long>();
+
+  private final Map<String, Set<String>> dependencies = new LinkedHashMap<String, Set<String>>();
+
+  private List<String> criticalPath = Collections.emptyList();
+
+  private long criticalPathNanos;
+
+  private volatile boolean recording = true;
+
+  private ConfigurableListableBeanFactory beanFactory;
+
+  private File outputFile;
+
+  public void setOutputFile(final File outputFile) {
+    this.outputFile = outputFile;
+  }
+
+  @Override
+  public void setBeanFactory(final BeanFactory beanFactory) throws BeansException {
+    this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+  }
+
+  @Override
+  public int getOrder() {
+    return Ordered.HIGHEST_PRECEDENCE;
+  }
+
+  @Override
+  public Object postProcessBeforeInstantiation(final Class<?> beanClass, final String beanName) throws BeansException {
+    if (recording) {
+      final CreationState state = creationState.get();
+      state.lastEvent = System.nanoTime();
+      state.frames.push(new Frame(beanName, state.lastEvent));
+    }
+    return null;
+  }
+
+  @Override
+  public boolean postProcessAfterInstantiation(final Object bean, final String beanName) throws BeansException {
+    return true;
+  }
+
+  @Override
+  public PropertyValues postProcessPropertyValues(final PropertyValues pvs, final PropertyDescriptor[] pds, final Object bean,
+      final String beanName) throws BeansException {
+    return pvs;
+  }
+
+  @Override
+  public Object postProcessBeforeInitialization(final Object bean, final String beanName) throws BeansException {
+    return bean;
+  }
+
+  @Override
+  public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
+    if (recording) {
+      recordCreated(beanName, creationState.get(), System.nanoTime());
+    }
+    return bean;
+  }
+
+  private void recordCreated(final String beanName, final CreationState state, final long now) {
+    final Frame frame = state.frames.peek();
+    final long totalNanos;
+    final long selfNanos;
+    if (frame != null && frame.beanName.equals(beanName)) {
+      state.frames.pop();
+      totalNanos = now - frame.start;
+      selfNanos = totalNanos - frame.nestedNanos;
+    } else if (state.lastEvent != 0) {
+      // factory method beans don't get a before instantiation callback, approximate with the time since the last event
+      totalNanos = now - state.lastEvent;
+      selfNanos = totalNanos;
+    } else {
+      // no event yet to measure from
+      totalNanos = -1;
+      selfNanos = -1;
+    }
+    state.lastEvent = now;
+    if (selfNanos < 0) {
+      return;
+    }
+    // objects created by a factory bean are post processed again with the same name, keep the first timing
+    timings.putIfAbsent(beanName, selfNanos);
+    final Frame parent = state.frames.peek();
+    if (parent != null) {
+      parent.nestedNanos += totalNanos;
+    }
+  }
+
+  @Override
+  public void onApplicationEvent(final ContextRefreshedEvent event) {
+    if (event.getApplicationContext().getAutowireCapableBeanFactory() != beanFactory) {
+      return;
+    }
+    recording = false;
+    creationState.remove();
+    synchronized (dependencies) {
+      dependencies.clear();
+      for (final String beanName : beanFactory.getBeanDefinitionNames()) {
+        dependencies.put(beanName, dependenciesFor(beanName));
+      }
+      computeCriticalPath();
+    }
+    LOGGER.debug("Startup critical path {} took {} ms", criticalPath, criticalPathNanos / 1000000d);
+    if (outputFile != null) {
+      try {
+        Files.createParentDirs(outputFile);
+        Files.write(toJson(), outputFile, Charsets.UTF_8);
+        LOGGER.debug("Startup graph written to '{}'", outputFile);
+      } catch (final IOException e) {
+        LOGGER.warn("Can't write startup graph to " + outputFile, e);
+      }
+    }
+  }
+
+  private Set<String> dependenciesFor(final String beanName) {
+    final Set<String> result = new LinkedHashSet<String>();
+    final BeanDefinition bd = beanFactory.getMergedBeanDefinition(beanName);
+    if (bd.getFactoryBeanName() != null) {
+      result.add(bd.getFactoryBeanName());
+    }
+    if (bd.getDependsOn() != null) {
+      result.addAll(Arrays.asList(bd.getDependsOn()));
+    }
+    // scoped proxies reference their target only by name
+    final PropertyValue targetBeanName = bd.getPropertyValues().getPropertyValue("targetBeanName");
+    if (targetBeanName != null && targetBeanName.getValue() instanceof String) {
+      result.add((String) targetBeanName.getValue());
+    }
+    // constructor and property injection
+    result.addAll(Arrays.asList(beanFactory.getDependenciesForBean(beanName)));
+    result.remove(beanName);
+    return result;
+  }
+
+  private void computeCriticalPath() {
+    final Map<String, Long> longest = new HashMap<String, Long>();
+    final Map<String, String> next = new HashMap<String, String>();
+    String start = null;
+    long startNanos = 0;
+    for (final String beanName : dependencies.keySet()) {
+      final long nanos = longestPath(beanName, longest, next, new HashSet<String>(), new boolean[1]);
+      if (start == null || nanos > startNanos) {
+        start = beanName;
+        startNanos = nanos;
+      }
+    }
+    final List<String> path = new ArrayList<String>();
+    final Set<String> onPath = new HashSet<String>();
+    for (String beanName = start; beanName != null && onPath.add(beanName); beanName = next.get(beanName)) {
+      path.add(beanName);
+    }
+    criticalPath = Collections.unmodifiableList(path);
+    criticalPathNanos = startNanos;
+  }
+
+  /**
+   * @param truncated set if the path of the bean was cut at a circular reference, such a path depends on the bean the search started
+   *          with and isn't memoized
+   */
+  private long longestPath(final String beanName, final Map<String, Long> longest, final Map<String, String> next,
+      final Set<String> visiting, final boolean[] truncated) {
+    final Long known = longest.get(beanName);
+    if (known != null) {
+      return known;
+    }
+    if (!visiting.add(beanName)) {
+      // circular reference, don't follow
+      truncated[0] = true;
+      return 0;
+    }
+    next.remove(beanName);
+    long max = 0;
+    boolean dependencyTruncated = false;
+    final Set<String> beanDependencies = dependencies.get(beanName);
+    if (beanDependencies != null) {
+      for (final String dependency : beanDependencies) {
+        final boolean[] childTruncated = new boolean[1];
+        final long nanos = longestPath(dependency, longest, next, visiting, childTruncated);
+        dependencyTruncated |= childTruncated[0];
+        if (nanos > max) {
+          max = nanos;
+          next.put(beanName, dependency);
+        }
+      }
+    }
+    visiting.remove(beanName);
+    final long result = selfNanos(beanName) + max;
+    if (dependencyTruncated) {
+      truncated[0] = true;
+    } else {
+      longest.put(beanName, result);
+    }
+    return result;
+  }
+
+  private long selfNanos(final String beanName) {
+    final Long timing = timings.get(beanName);
+    return timing == null ? 0 : timing;
+  }
+
+  /**
+   * Compute the critical path of the given dependency graph, used by tests.
+   */
+  void computeCriticalPath(final Map<String, Set<String>> graph, final Map<String, Long> beanTimings) {
+    synchronized (dependencies) {
+      dependencies.clear();
+      dependencies.putAll(graph);
+      timings.clear();
+      timings.putAll(beanTimings);
+      computeCriticalPath();
+    }
+  }
+
+  /**
+   * @return the recorded direct dependencies of the given bean (available after refresh)
+   */
+  public Set<String> getDependencies(final String beanName) {
+    synchronized (dependencies) {
+      final Set<String> result = dependencies.get(beanName);
+      return result == null ? Collections.<String> emptySet() : Collections.unmodifiableSet(result);
+    }
+  }
+
+  /**
+   * @return the chain of bean names with the longest accumulated instantiation time, starting with the outermost bean
+   */
+  public List<String> getCriticalPath() {
+    return criticalPath;
+  }
+
+  public long getCriticalPathNanos() {
+    return criticalPathNanos;
+  }
+
+  String toJson() {
+    final StringBuilder json = new StringBuilder("{\n  \"beans\": [");
+    synchronized (dependencies) {
+      String separator = "\n";
+      for (final Map.Entry<String, Set<String>> bean : dependencies.entrySet()) {
+        final String beanName = bean.getKey();
+        final BeanDefinition bd = beanFactory.getMergedBeanDefinition(beanName);
+        final Long timing = timings.get(beanName);
+        json.append(separator).append("    {\"name\": ").append(quote(beanName));
+        json.append(", \"scope\": ").append(quote(bd.getScope()));
+        json.append(", \"lazyInit\": ").append(bd.isLazyInit());
+        json.append(", \"instantiated\": ").append(timing != null);
+        json.append(", \"nanos\": ").append(timing == null ? 0 : timing);
+        json.append(", \"dependencies\": ").append(quote(bean.getValue())).append('}');
+        separator = ",\n";
+      }
+    }
+    json.append("\n  ],\n  \"criticalPath\": {\"nanos\": ").append(criticalPathNanos);
+    json.append(", \"beans\": ").append(quote(criticalPath)).append("}\n}\n");
+    return json.toString();
+  }
+
+  private static String quote(final Iterable<String> values) {
+    final StringBuilder result = new StringBuilder("[");
+    for (final String value : values) {
+      if (result.length() > 1) {
+        result.append(", ");
+      }
+      result.append(quote(value));
+    }
+    return result.append(']').toString();
+  }
+
+  private static String quote(final String value) {
+    if (value == null) {
+      return "null";
+    }
+    final StringBuilder result = new StringBuilder("\"");
+    for (final char c : value.toCharArray()) {
+      switch (c) {
+      case '"':
+        result.append("\\\"");
+        break;
+      case '\\':
+        result.append("\\\\");
+        break;
+      default:
+        if (c < 0x20) {
+          result.append(String.format("\\u%04x", (int) c));
+        } else {
+          result.append(c);
+        }
+      }
+    }
+    return result.append('"').toString();
+  }
+}
@@ -0,0 +1,347 @@
+package com.mymita.spring;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.scope.ScopedProxyUtils;
+import org.springframework.beans.BeanMetadataAttribute;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinitionReader;
+import org.springframework.beans.factory.support.AutowireCandidateQualifier;
+import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Bean definition reader for Spring XML bean definition files which streams the document with StAX instead of building a DOM, so the
+ * memory needed doesn't grow with the file. Each bean definition is registered as soon as its element is read.
+ *
+ * Supported are the elements of the beans namespace <code>&lt;bean&gt;</code> (including inner beans), <code>&lt;property&gt;</code>,
+ * <code>&lt;constructor-arg&gt;</code> with <code>value</code>/<code>ref</code>/<code>null</code> values,
+ * <code>&lt;qualifier&gt;</code> with <code>&lt;attribute&gt;</code>, <code>&lt;meta&gt;</code>, <code>&lt;alias&gt;</code>,
+ * <code>&lt;import&gt;</code>, nested <code>&lt;beans profile="..."&gt;</code> and <code>&lt;aop:scoped-proxy&gt;</code>. Other elements
+ * (collections, custom namespaces) and the <code>default-*</code> attributes aren't supported, use the
+ * {@link org.springframework.beans.factory.xml.XmlBeanDefinitionReader} for them.
+ *
+ * A resource is read only once per reader, further imports of the same resource are skipped.
+ *
+ * <pre>
+ * &#064;ImportResource(value = "services.xml", reader = StaxBeanDefinitionReader.class)
+ * </pre>
+ */
+public class StaxBeanDefinitionReader extends AbstractBeanDefinitionReader {
+
+  public static final String BEANS_NAMESPACE_URI = "http://www.springframework.org/schema/beans";
+
+  public static final String AOP_NAMESPACE_URI = "http://www.springframework.org/schema/aop";
+
+  private static final String MULTI_VALUE_DELIMITERS = ",; ";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StaxBeanDefinitionReader.class);
+
+  private static String attribute(final XMLStreamReader reader, final String name) {
+    final String value = reader.getAttributeValue(null, name);
+    return StringUtils.hasLength(value) ? value : null;
+  }
+
+  private static boolean isElement(final XMLStreamReader reader, final String namespaceUri, final String localName) {
+    final String actualNamespaceUri = reader.getNamespaceURI();
+    // documents without namespace use the beans namespace
+    return localName.equals(reader.getLocalName())
+        && (namespaceUri.equals(actualNamespaceUri) || (BEANS_NAMESPACE_URI.equals(namespaceUri) && !StringUtils
+            .hasLength(actualNamespaceUri)));
+  }
+
+  private static boolean isBeansElement(final XMLStreamReader reader, final String localName) {
+    return isElement(reader, BEANS_NAMESPACE_URI, localName);
+  }
+
+  /**
+   * Skip the current element including its children.
+   */
+  private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+    for (int depth = 1; depth > 0;) {
+      final int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static int autowireMode(final String autowire) {
+    if ("byName".equals(autowire)) {
+      return AbstractBeanDefinition.AUTOWIRE_BY_NAME;
+    }
+    if ("byType".equals(autowire)) {
+      return AbstractBeanDefinition.AUTOWIRE_BY_TYPE;
+    }
+    if ("constructor".equals(autowire)) {
+      return AbstractBeanDefinition.AUTOWIRE_CONSTRUCTOR;
+    }
+    return AbstractBeanDefinition.AUTOWIRE_NO;
+  }
+
+  private static void close(final XMLStreamReader reader, final InputStream inputStream) {
+    try {
+      if (reader != null) {
+        reader.close();
+      }
+    } catch (final XMLStreamException e) {
+      LOGGER.debug("Can't close XML reader", e);
+    }
+    try {
+      if (inputStream != null) {
+        inputStream.close();
+      }
+    } catch (final IOException e) {
+      LOGGER.debug("Can't close input stream", e);
+    }
+  }
+
+  private final XMLInputFactory inputFactory;
+
+  private final Set<Resource> loadedResources = new HashSet<Resource>();
+
+  public StaxBeanDefinitionReader(final BeanDefinitionRegistry registry) {
+    super(registry);
+    inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+  }
+
+  @Override
+  public int loadBeanDefinitions(final Resource resource) throws BeanDefinitionStoreException {
+    if (!loadedResources.add(resource)) {
+      LOGGER.debug("Skip already loaded {}", resource);
+      return 0;
+    }
+    LOGGER.debug("Loading bean definitions from {}", resource);
+    final int countBefore = getRegistry().getBeanDefinitionCount();
+    InputStream inputStream = null;
+    XMLStreamReader reader = null;
+    try {
+      inputStream = resource.getInputStream();
+      reader = inputFactory.createXMLStreamReader(inputStream);
+      reader.nextTag();
+      if (!isBeansElement(reader, "beans")) {
+        throw unsupportedElement(reader, resource);
+      }
+      parseBeans(reader, resource);
+    } catch (final IOException e) {
+      throw new BeanDefinitionStoreException("IOException parsing XML document from " + resource, e);
+    } catch (final XMLStreamException e) {
+      throw new BeanDefinitionStoreException(resource.getDescription(), "XML document from " + resource + " is invalid", e);
+    } finally {
+      close(reader, inputStream);
+    }
+    return getRegistry().getBeanDefinitionCount() - countBefore;
+  }
+
+  private BeanDefinitionStoreException unsupportedElement(final XMLStreamReader reader, final Resource resource) {
+    return new BeanDefinitionStoreException(resource.getDescription(), String.format(
+        "Unsupported element <%s> in line %s, use the XmlBeanDefinitionReader", reader.getName(), reader.getLocation()
+            .getLineNumber()));
+  }
+
+  private void parseBeans(final XMLStreamReader reader, final Resource resource) throws XMLStreamException {
+    final String profile = attribute(reader, "profile");
+    if (profile != null
+        && !getEnvironment().acceptsProfiles(StringUtils.tokenizeToStringArray(profile, MULTI_VALUE_DELIMITERS))) {
+      LOGGER.debug("Skip beans of profile '{}' in {}", profile, resource);
+      skipElement(reader);
+      return;
+    }
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (isBeansElement(reader, "bean")) {
+        BeanDefinitionReaderUtils.registerBeanDefinition(parseBean(reader, resource, false), getRegistry());
+      } else if (isBeansElement(reader, "alias")) {
+        getRegistry().registerAlias(attribute(reader, "name"), attribute(reader, "alias"));
+        skipElement(reader);
+      } else if (isBeansElement(reader, "import")) {
+        importResource(attribute(reader, "resource"), resource);
+        skipElement(reader);
+      } else if (isBeansElement(reader, "beans")) {
+        parseBeans(reader, resource);
+      } else if (isBeansElement(reader, "description")) {
+        skipElement(reader);
+      } else {
+        throw unsupportedElement(reader, resource);
+      }
+    }
+  }
+
+  private void importResource(final String location, final Resource resource) {
+    final String resolvedLocation = getEnvironment().resolveRequiredPlaceholders(location);
+    if (ResourcePatternUtils.isUrl(resolvedLocation) || resolvedLocation.startsWith("/")) {
+      loadBeanDefinitions(resolvedLocation);
+    } else {
+      try {
+        loadBeanDefinitions(resource.createRelative(resolvedLocation));
+      } catch (final IOException e) {
+        throw new BeanDefinitionStoreException(resource.getDescription(), "Invalid relative resource location ["
+            + resolvedLocation + "] to import bean definitions from", e);
+      }
+    }
+  }
+
+  private BeanDefinitionHolder parseBean(final XMLStreamReader reader, final Resource resource, final boolean inner)
+      throws XMLStreamException {
+    final AbstractBeanDefinition beanDefinition;
+    try {
+      beanDefinition = BeanDefinitionReaderUtils.createBeanDefinition(attribute(reader, "parent"), attribute(reader, "class"),
+          getBeanClassLoader());
+    } catch (final ClassNotFoundException e) {
+      throw new BeanDefinitionStoreException(resource.getDescription(), "Bean class not found in line "
+          + reader.getLocation().getLineNumber(), e);
+    }
+    beanDefinition.setResource(resource);
+    final String id = attribute(reader, "id");
+    final List<String> aliases = new ArrayList<String>();
+    if (attribute(reader, "name") != null) {
+      aliases.addAll(Arrays.asList(StringUtils.tokenizeToStringArray(attribute(reader, "name"), MULTI_VALUE_DELIMITERS)));
+    }
+    if (attribute(reader, "scope") != null) {
+      beanDefinition.setScope(attribute(reader, "scope"));
+    }
+    beanDefinition.setAbstract(Boolean.valueOf(attribute(reader, "abstract")));
+    beanDefinition.setLazyInit(Boolean.valueOf(attribute(reader, "lazy-init")));
+    beanDefinition.setPrimary(Boolean.valueOf(attribute(reader, "primary")));
+    if (attribute(reader, "autowire-candidate") != null) {
+      beanDefinition.setAutowireCandidate(Boolean.valueOf(attribute(reader, "autowire-candidate")));
+    }
+    if (attribute(reader, "autowire") != null) {
+      beanDefinition.setAutowireMode(autowireMode(attribute(reader, "autowire")));
+    }
+    if (attribute(reader, "depends-on") != null) {
+      beanDefinition.setDependsOn(StringUtils.tokenizeToStringArray(attribute(reader, "depends-on"), MULTI_VALUE_DELIMITERS));
+    }
+    beanDefinition.setInitMethodName(attribute(reader, "init-method"));
+    beanDefinition.setDestroyMethodName(attribute(reader, "destroy-method"));
+    beanDefinition.setFactoryMethodName(attribute(reader, "factory-method"));
+    beanDefinition.setFactoryBeanName(attribute(reader, "factory-bean"));
+    Boolean proxyTargetClass = null;
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (isBeansElement(reader, "property")) {
+        final String name = attribute(reader, "name");
+        beanDefinition.getPropertyValues().addPropertyValue(new PropertyValue(name, parseValue(reader, resource)));
+      } else if (isBeansElement(reader, "constructor-arg")) {
+        final String index = attribute(reader, "index");
+        final ValueHolder valueHolder = new ValueHolder(null, attribute(reader, "type"), attribute(reader, "name"));
+        valueHolder.setValue(parseValue(reader, resource));
+        if (index == null) {
+          beanDefinition.getConstructorArgumentValues().addGenericArgumentValue(valueHolder);
+        } else {
+          beanDefinition.getConstructorArgumentValues().addIndexedArgumentValue(Integer.parseInt(index), valueHolder);
+        }
+      } else if (isBeansElement(reader, "qualifier")) {
+        beanDefinition.addQualifier(parseQualifier(reader, resource));
+      } else if (isBeansElement(reader, "meta")) {
+        beanDefinition.addMetadataAttribute(new BeanMetadataAttribute(attribute(reader, "key"), attribute(reader, "value")));
+        skipElement(reader);
+      } else if (isBeansElement(reader, "description")) {
+        beanDefinition.setDescription(reader.getElementText());
+      } else if (isElement(reader, AOP_NAMESPACE_URI, "scoped-proxy")) {
+        proxyTargetClass = !"false".equals(attribute(reader, "proxy-target-class"));
+        skipElement(reader);
+      } else {
+        throw unsupportedElement(reader, resource);
+      }
+    }
+    String beanName = id;
+    if (beanName == null && !aliases.isEmpty()) {
+      beanName = aliases.remove(0);
+    }
+    if (beanName == null) {
+      beanName = inner ? BeanDefinitionReaderUtils.generateBeanName(beanDefinition, getRegistry(), true)
+          : getBeanNameGenerator().generateBeanName(beanDefinition, getRegistry());
+    }
+    BeanDefinitionHolder holder = new BeanDefinitionHolder(beanDefinition, beanName, aliases.toArray(new String[aliases.size()]));
+    if (proxyTargetClass != null) {
+      holder = ScopedProxyUtils.createScopedProxy(holder, getRegistry(), proxyTargetClass);
+    }
+    return holder;
+  }
+
+  /**
+   * Parse the value of a <code>&lt;property&gt;</code> or <code>&lt;constructor-arg&gt;</code> element given as attribute or as child
+   * element.
+   */
+  private Object parseValue(final XMLStreamReader reader, final Resource resource) throws XMLStreamException {
+    final String elementName = reader.getLocalName();
+    final String name = attribute(reader, "name");
+    final int lineNumber = reader.getLocation().getLineNumber();
+    Object value = null;
+    if (attribute(reader, "value") != null) {
+      value = new TypedStringValue(attribute(reader, "value"));
+    } else if (attribute(reader, "ref") != null) {
+      value = new RuntimeBeanReference(attribute(reader, "ref"));
+    }
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (isBeansElement(reader, "value")) {
+        final String type = attribute(reader, "type");
+        value = type == null ? new TypedStringValue(reader.getElementText()) : new TypedStringValue(reader.getElementText(), type);
+      } else if (isBeansElement(reader, "ref")) {
+        value = attribute(reader, "parent") != null ? new RuntimeBeanReference(attribute(reader, "parent"), true)
+            : new RuntimeBeanReference(attribute(reader, "bean"));
+        skipElement(reader);
+      } else if (isBeansElement(reader, "null")) {
+        value = new TypedStringValue(null);
+        skipElement(reader);
+      } else if (isBeansElement(reader, "bean")) {
+        value = parseBean(reader, resource, true);
+      } else if (isBeansElement(reader, "description")) {
+        skipElement(reader);
+      } else {
+        throw unsupportedElement(reader, resource);
+      }
+    }
+    if (value == null) {
+      // like the XmlBeanDefinitionReader, an element without value isn't taken as null
+      throw new BeanDefinitionStoreException(resource.getDescription(), String.format(
+          "<%s> element%s in line %s must specify a ref or value", elementName, name == null ? "" : " for '" + name + "'", lineNumber));
+    }
+    return value;
+  }
+
+  private AutowireCandidateQualifier parseQualifier(final XMLStreamReader reader, final Resource resource)
+      throws XMLStreamException {
+    final String type = attribute(reader, "type");
+    final AutowireCandidateQualifier qualifier = new AutowireCandidateQualifier(type == null ? Qualifier.class.getName() : type);
+    qualifier.setSource(resource);
+    if (attribute(reader, "value") != null) {
+      qualifier.setAttribute(AutowireCandidateQualifier.VALUE_KEY, attribute(reader, "value"));
+    }
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      if (isBeansElement(reader, "attribute")) {
+        qualifier.addMetadataAttribute(new BeanMetadataAttribute(attribute(reader, "key"), attribute(reader, "value")));
+        skipElement(reader);
+      } else {
+        throw unsupportedElement(reader, resource);
+      }
+    }
+    return qualifier;
+  }
+}
@@ -0,0 +1,73 @@
+package com.mymita.spring;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Array of counters spread over stripes selected by the current thread, so concurrent threads rarely update the same cache line. Reading a
+ * counter sums up its stripes.
+ */
+final class StripedLongArray {
+
+  /** 8 longs of padding between the stripes (a cache line) */
+  private static final int PADDING = 8;
+
+  private static final int STRIPES = stripes();
+
+  private static int stripes() {
+    final int processors = Runtime.getRuntime().availableProcessors();
+    // next power of two of twice the processors, at most 64
+    return Math.min(64, Integer.highestOneBit(Math.max(1, processors * 2 - 1)) << 1);
+  }
+
+  private static int stripe() {
+    final long id = Thread.currentThread().getId();
+    final int hash = (int) (id ^ id >>> 32) * 0x9E3779B9;
+    return (hash ^ hash >>> 16) & STRIPES - 1;
+  }
+
+  private final int length;
+
+  private final int stride;
+
+  private final AtomicLongArray cells;
+
+  StripedLongArray(final int length) {
+    this.length = length;
+    stride = length + PADDING;
+    cells = new AtomicLongArray(STRIPES * stride + PADDING);
+  }
+
+  int length() {
+    return length;
+  }
+
+  void add(final int index, final long delta) {
+    cells.addAndGet(PADDING + stripe() * stride + index, delta);
+  }
+
+  void increment(final int index) {
+    add(index, 1);
+  }
+
+  long get(final int index) {
+    long sum = 0;
+    for (int i = PADDING + index; i < cells.length(); i += stride) {
+      sum += cells.get(i);
+    }
+    return sum;
+  }
+
+  long[] toArray() {
+    final long[] result = new long[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = get(i);
+    }
+    return result;
+  }
+
+  void reset() {
+    for (int i = 0; i < cells.length(); i++) {
+      cells.set(i, 0);
+    }
+  }
+}
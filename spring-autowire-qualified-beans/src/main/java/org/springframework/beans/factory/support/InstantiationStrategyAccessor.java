@@ -0,0 +1,15 @@
+package org.springframework.beans.factory.support;
+
+/**
+ * Access to the protected {@link AbstractAutowireCapableBeanFactory#getInstantiationStrategy()} without reflection, needed to replace
+ * the default strategy only.
+ */
+public final class InstantiationStrategyAccessor {
+
+  private InstantiationStrategyAccessor() {
+  }
+
+  public static InstantiationStrategy getInstantiationStrategy(final AbstractAutowireCapableBeanFactory beanFactory) {
+    return beanFactory.getInstantiationStrategy();
+  }
+}
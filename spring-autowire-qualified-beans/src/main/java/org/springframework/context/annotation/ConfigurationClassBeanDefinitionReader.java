@@ -24,6 +24,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -59,9 +60,15 @@ import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.core.type.MethodMetadata;
 import org.springframework.core.type.StandardMethodMetadata;
 import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
 
+import com.mymita.spring.CompiledQualifierMatcher;
+import com.mymita.spring.QualifierInitPolicies;
+import com.mymita.spring.QualifierInitPolicy;
+
 /**
  * Reads a given fully-populated set of ConfigurationClass instances, registering bean definitions with the given
  * {@link BeanDefinitionRegistry} based on its contents.
@@ -147,6 +154,14 @@ class ConfigurationClassBeanDefinitionReader {
 
   private final BeanNameGenerator importBeanNameGenerator;
 
+  /** reader instances shared by all configuration classes of a {@link #loadBeanDefinitions(Set)} run */
+  private final Map<Class<?>, BeanDefinitionReader> readerInstanceCache = new HashMap<Class<?>, BeanDefinitionReader>();
+
+  /** reader class and imported resource pairs already loaded in a {@link #loadBeanDefinitions(Set)} run */
+  private final Set<List<Object>> loadedResources = new HashSet<List<Object>>();
+
+  private final PathMatcher pathMatcher = new AntPathMatcher();
+
   /**
    * Create a new {@link ConfigurationClassBeanDefinitionReader} instance that will be used to populate the given
    * {@link BeanDefinitionRegistry}.
@@ -164,6 +179,24 @@ class ConfigurationClassBeanDefinitionReader {
     this.importBeanNameGenerator = importBeanNameGenerator;
   }
 
+  /**
+   * Compile the given qualifiers of the bean definition into {@link CompiledQualifierMatcher}s, qualifiers which can't be compiled are
+   * resolved reflectively.
+   */
+  private static void compileQualifierMatchers(final AbstractBeanDefinition beanDef, final Set<Class<? extends Annotation>> qualifierTypes) {
+    final List<CompiledQualifierMatcher> matchers = new ArrayList<CompiledQualifierMatcher>();
+    for (final Class<? extends Annotation> qualifierType : qualifierTypes) {
+      final CompiledQualifierMatcher matcher = CompiledQualifierMatcher.compile(qualifierType,
+          beanDef.getQualifier(qualifierType.getName()), beanDef);
+      if (matcher != null) {
+        matchers.add(matcher);
+      }
+    }
+    if (!matchers.isEmpty()) {
+      beanDef.setAttribute(CompiledQualifierMatcher.ATTRIBUTE, matchers.toArray(new CompiledQualifierMatcher[matchers.size()]));
+    }
+  }
+
   static Map<Class<? extends Annotation>,AnnotationAttributes> qualifierAttributesFor(final MethodMetadata metadata) {
     if (metadata instanceof StandardMethodMetadata) {
       return qualifierFor(metadata, ((StandardMethodMetadata)metadata).getIntrospectedMethod());
@@ -216,12 +249,82 @@ class ConfigurationClassBeanDefinitionReader {
     return result;
   }
 
+  /**
+   * Collect the {@link QualifierInitPolicy} declarations of the given configuration class (direct or nested in
+   * {@link QualifierInitPolicies}) as attribute maps.
+   */
+  private static List<AnnotationAttributes> initPoliciesFor(final AnnotationMetadata metadata) {
+    final List<AnnotationAttributes> result = new ArrayList<AnnotationAttributes>();
+    final AnnotationAttributes policies = attributesFor(metadata, QualifierInitPolicies.class);
+    if (policies != null) {
+      final Object nested = policies.get("value");
+      if (nested instanceof Annotation[]) {
+        // standard reflection based metadata returns the nested annotations as is
+        for (final Annotation policy : (Annotation[]) nested) {
+          result.add(AnnotationUtils.getAnnotationAttributes(policy, false, true));
+        }
+      } else if (nested instanceof AnnotationAttributes[]) {
+        result.addAll(Arrays.asList((AnnotationAttributes[]) nested));
+      }
+    }
+    final AnnotationAttributes policy = attributesFor(metadata, QualifierInitPolicy.class);
+    if (policy != null) {
+      result.add(policy);
+    }
+    return result;
+  }
+
+  private static String valueAsString(final Object value) {
+    if (value instanceof Class) {
+      return ((Class<?>) value).getName();
+    }
+    if (value instanceof Enum) {
+      return ((Enum<?>) value).name();
+    }
+    return String.valueOf(value);
+  }
+
+  /**
+   * Find the first {@link QualifierInitPolicy} of the given configuration class which matches one of the qualifiers of a bean method.
+   *
+   * @return the mode of the matching policy or <code>null</code>
+   */
+  private QualifierInitPolicy.Mode initPolicyFor(final ConfigurationClass configClass,
+      final Map<Class<? extends Annotation>, AnnotationAttributes> qualifiers) {
+    if (qualifiers.isEmpty()) {
+      return null;
+    }
+    for (final AnnotationAttributes policy : initPoliciesFor(configClass.getMetadata())) {
+      final String[] profiles = policy.getStringArray("profiles");
+      if (profiles.length > 0 && !this.environment.acceptsProfiles(profiles)) {
+        continue;
+      }
+      final String qualifierType = valueAsString(policy.get("qualifier"));
+      for (final Entry<Class<? extends Annotation>, AnnotationAttributes> qualifier : qualifiers.entrySet()) {
+        if (!qualifier.getKey().getName().equals(qualifierType)) {
+          continue;
+        }
+        final List<String> values = Arrays.asList(policy.getStringArray("values"));
+        final Object actualValue = qualifier.getValue().get(policy.getString("attribute"));
+        if (values.isEmpty() || (actualValue != null && values.contains(valueAsString(actualValue)))) {
+          return policy.<QualifierInitPolicy.Mode> getEnum("mode");
+        }
+      }
+    }
+    return null;
+  }
+
   /**
    * Read {@code configurationModel}, registering bean definitions with {@link #registry} based on its contents.
    */
   public void loadBeanDefinitions(final Set<ConfigurationClass> configurationModel) {
-    for (final ConfigurationClass configClass : configurationModel) {
-      loadBeanDefinitionsForConfigurationClass(configClass);
+    try {
+      for (final ConfigurationClass configClass : configurationModel) {
+        loadBeanDefinitionsForConfigurationClass(configClass);
+      }
+    } finally {
+      this.readerInstanceCache.clear();
+      this.loadedResources.clear();
     }
   }
 
@@ -257,6 +360,18 @@ class ConfigurationClassBeanDefinitionReader {
     final AnnotationAttributes bean = attributesFor(metadata, Bean.class);
     final List<String> names = new ArrayList<String>(Arrays.asList(bean.getStringArray("name")));
     final String beanName = (names.size() > 0 ? names.remove(0) : beanMethod.getMetadata().getMethodName());
+
+    // consider qualifier based init policies of the configuration class
+    final Map<Class<? extends Annotation>, AnnotationAttributes> qualifiers = qualifierAttributesFor(metadata);
+    final QualifierInitPolicy.Mode initPolicy = initPolicyFor(configClass, qualifiers);
+    if (initPolicy == QualifierInitPolicy.Mode.SKIP) {
+      if (logger.isDebugEnabled()) {
+        logger.debug(String
+            .format("Skipping loading bean definition for @Bean method %s.%s() because of qualifier init policy", configClass.getMetadata().getClassName(), beanName));
+      }
+      return;
+    }
+
     for (final String alias : names) {
       this.registry.registerAlias(beanName, alias);
     }
@@ -292,6 +407,8 @@ class ConfigurationClassBeanDefinitionReader {
     if (metadata.isAnnotated(Lazy.class.getName())) {
       final AnnotationAttributes lazy = attributesFor(metadata, Lazy.class);
       beanDef.setLazyInit(lazy.getBoolean("value"));
+    } else if (initPolicy == QualifierInitPolicy.Mode.LAZY) {
+      beanDef.setLazyInit(true);
     } else if (configClass.getMetadata().isAnnotated(Lazy.class.getName())) {
       final AnnotationAttributes lazy = attributesFor(configClass.getMetadata(), Lazy.class);
       beanDef.setLazyInit(lazy.getBoolean("value"));
@@ -331,7 +448,7 @@ class ConfigurationClassBeanDefinitionReader {
       }
     }
 
-    for (final Entry<Class<? extends Annotation>, AnnotationAttributes> qualifierAnnotation : qualifierAttributesFor(metadata).entrySet()) {
+    for (final Entry<Class<? extends Annotation>, AnnotationAttributes> qualifierAnnotation : qualifiers.entrySet()) {
       final AutowireCandidateQualifier qualifier = new AutowireCandidateQualifier(qualifierAnnotation.getKey());
       for (final Entry<String, Object> entry : qualifierAnnotation.getValue().entrySet()) {
         final String attributeName = entry.getKey();
@@ -350,12 +467,18 @@ class ConfigurationClassBeanDefinitionReader {
       }
     }
 
+    compileQualifierMatchers(beanDef, qualifiers.keySet());
+
     // Replace the original bean definition with the target one, if necessary
     BeanDefinition beanDefToRegister = beanDef;
     if (proxyMode != ScopedProxyMode.NO) {
       final BeanDefinitionHolder proxyDef = ScopedProxyCreator.createScopedProxy(new BeanDefinitionHolder(beanDef, beanName),
           this.registry, proxyMode == ScopedProxyMode.TARGET_CLASS);
       beanDefToRegister = new ConfigurationClassBeanDefinition((RootBeanDefinition) proxyDef.getBeanDefinition(), configClass);
+      // the scoped proxy follows the lazy-init decision of its target
+      beanDefToRegister.setLazyInit(beanDef.isLazyInit());
+      // the scoped proxy carries the qualifiers of its target
+      beanDefToRegister.setAttribute(CompiledQualifierMatcher.ATTRIBUTE, beanDef.getAttribute(CompiledQualifierMatcher.ATTRIBUTE));
     }
 
     if (logger.isDebugEnabled()) {
@@ -380,12 +503,18 @@ class ConfigurationClassBeanDefinitionReader {
   }
 
   private void loadBeanDefinitionsFromImportedResources(final Map<String, Class<? extends BeanDefinitionReader>> importedResources) {
-
-    final Map<Class<?>, BeanDefinitionReader> readerInstanceCache = new HashMap<Class<?>, BeanDefinitionReader>();
     for (final Map.Entry<String, Class<? extends BeanDefinitionReader>> entry : importedResources.entrySet()) {
       final String resource = entry.getKey();
       final Class<? extends BeanDefinitionReader> readerClass = entry.getValue();
-      if (!readerInstanceCache.containsKey(readerClass)) {
+      // the same resource imported by several configuration classes with the same reader is loaded once
+      if (this.resourceLoader != null && !this.pathMatcher.isPattern(resource)
+          && !this.loadedResources.add(Arrays.<Object> asList(readerClass, this.resourceLoader.getResource(resource)))) {
+        if (logger.isDebugEnabled()) {
+          logger.debug(String.format("Skip already loaded resource %s", resource));
+        }
+        continue;
+      }
+      if (!this.readerInstanceCache.containsKey(readerClass)) {
         try {
           // Instantiate the specified BeanDefinitionReader
           final BeanDefinitionReader readerInstance = readerClass.getConstructor(BeanDefinitionRegistry.class).newInstance(this.registry);
@@ -395,12 +524,12 @@ class ConfigurationClassBeanDefinitionReader {
             abdr.setResourceLoader(this.resourceLoader);
             abdr.setEnvironment(this.environment);
           }
-          readerInstanceCache.put(readerClass, readerInstance);
+          this.readerInstanceCache.put(readerClass, readerInstance);
         } catch (final Exception ex) {
           throw new IllegalStateException("Could not instantiate BeanDefinitionReader class [" + readerClass.getName() + "]");
         }
       }
-      final BeanDefinitionReader reader = readerInstanceCache.get(readerClass);
+      final BeanDefinitionReader reader = this.readerInstanceCache.get(readerClass);
       // TODO SPR-6310: qualify relative path locations as done in AbstractContextLoader.modifyLocations
       reader.loadBeanDefinitions(resource);
     }
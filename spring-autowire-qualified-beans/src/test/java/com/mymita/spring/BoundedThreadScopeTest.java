@@ -0,0 +1,238 @@
+package com.mymita.spring;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.mymita.spring.FoobarContext.ContextType;
+
+public class BoundedThreadScopeTest {
+
+  @Configuration
+  static class TestConfiguration {
+
+    static final BoundedThreadScope SCOPE = new BoundedThreadScope();
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      SCOPE.setMaxSize(1);
+      scopes.put("foobarScope", SCOPE);
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      return new FoobarImpl().setName("4");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.TARGET_CLASS)
+    FoobarService service5() {
+      return new FoobarImpl().setName("5");
+    }
+  }
+
+  private static class CountingObjectFactory implements ObjectFactory<Object> {
+
+    final AtomicInteger created = new AtomicInteger();
+
+    @Override
+    public Object getObject() {
+      return "object " + created.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void testMaxSize() throws InterruptedException {
+    final BoundedThreadScope scope = new BoundedThreadScope();
+    scope.setMaxSize(2);
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    final Object a = scope.get("a", objectFactory);
+    scope.registerDestructionCallback("a", new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+    scope.get("b", objectFactory);
+    Assert.assertSame(scope.get("a", objectFactory), a);
+    // b is the least recently used
+    scope.get("c", objectFactory);
+    Assert.assertSame(scope.get("a", objectFactory), a);
+    scope.get("b", objectFactory);
+    Assert.assertEquals(objectFactory.created.get(), 4);
+    Assert.assertEquals(scope.getHitCount(), 2);
+    Assert.assertEquals(scope.getMissCount(), 4);
+    Assert.assertEquals(scope.getEvictionCount(), 2);
+    Assert.assertEquals(scope.getDestructionCount(), 0);
+    // a is still in the scope and destroyed with it, b wasn't registered with a callback
+    scope.destroy();
+    Assert.assertEquals(scope.getDestructionCount(), 1);
+  }
+
+  @Test
+  public void testTimeToLive() {
+    final AtomicLong nanos = new AtomicLong();
+    final BoundedThreadScope scope = new BoundedThreadScope();
+    scope.setTimeToLiveMillis(10);
+    scope.setTicker(new Ticker() {
+      @Override
+      public long read() {
+        return nanos.get();
+      }
+    });
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    final Object a = scope.get("a", objectFactory);
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(9));
+    Assert.assertSame(scope.get("a", objectFactory), a);
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    Assert.assertNotSame(scope.get("a", objectFactory), a);
+    Assert.assertEquals(scope.getEvictionCount(), 1);
+  }
+
+  @Test
+  public void testDestructionCallbacksInBackground() throws InterruptedException {
+    final BoundedThreadScope scope = new BoundedThreadScope();
+    scope.setDestructionBatchSize(2);
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    final CountDownLatch destroyed = new CountDownLatch(2);
+    final AtomicReference<Thread> destructionThread = new AtomicReference<Thread>();
+    for (final String name : new String[] {
+        "a", "b"
+    }) {
+      scope.get(name, objectFactory);
+      scope.registerDestructionCallback(name, new Runnable() {
+        @Override
+        public void run() {
+          destructionThread.set(Thread.currentThread());
+          destroyed.countDown();
+        }
+      });
+    }
+    scope.clear();
+    Assert.assertTrue(destroyed.await(5, TimeUnit.SECONDS));
+    Assert.assertNotSame(destructionThread.get(), Thread.currentThread());
+    scope.destroy();
+    Assert.assertEquals(scope.getDestructionCount(), 2);
+  }
+
+  @Test
+  public void testDestructionCallbacksAfterInterval() throws InterruptedException {
+    final BoundedThreadScope scope = new BoundedThreadScope();
+    // the batch is never complete
+    scope.setDestructionBatchSize(100);
+    scope.setDestructionIntervalMillis(10);
+    final CountDownLatch destroyed = new CountDownLatch(1);
+    scope.get("a", new CountingObjectFactory());
+    scope.registerDestructionCallback("a", new Runnable() {
+      @Override
+      public void run() {
+        destroyed.countDown();
+      }
+    });
+    scope.clear();
+    Assert.assertTrue(destroyed.await(5, TimeUnit.SECONDS));
+    scope.destroy();
+    Assert.assertEquals(scope.getDestructionCount(), 1);
+  }
+
+  @Test
+  public void testDestructionCallbacksAfterDestroy() throws InterruptedException {
+    final BoundedThreadScope scope = new BoundedThreadScope();
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    scope.destroy();
+    final AtomicReference<Thread> destructionThread = new AtomicReference<Thread>();
+    scope.get("a", objectFactory);
+    scope.registerDestructionCallback("a", new Runnable() {
+      @Override
+      public void run() {
+        destructionThread.set(Thread.currentThread());
+      }
+    });
+    // no new background thread, the callback runs in the evicting thread
+    scope.clear();
+    Assert.assertSame(destructionThread.get(), Thread.currentThread());
+    Assert.assertEquals(scope.getDestructionCount(), 1);
+  }
+
+  @Test
+  public void testDestroyObjectsOfAllThreads() throws InterruptedException {
+    final BoundedThreadScope scope = new BoundedThreadScope();
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    final AtomicInteger destroyed = new AtomicInteger();
+    final Runnable createAndRegister = new Runnable() {
+      @Override
+      public void run() {
+        scope.get("a", objectFactory);
+        scope.registerDestructionCallback("a", new Runnable() {
+          @Override
+          public void run() {
+            destroyed.incrementAndGet();
+          }
+        });
+      }
+    };
+    createAndRegister.run();
+    final CountDownLatch created = new CountDownLatch(1);
+    final CountDownLatch scopeDestroyed = new CountDownLatch(1);
+    // the objects of a thread are reclaimed with the thread, keep it alive until the scope is destroyed
+    final Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        createAndRegister.run();
+        created.countDown();
+        try {
+          scopeDestroyed.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    thread.start();
+    Assert.assertTrue(created.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(objectFactory.created.get(), 2);
+    Assert.assertEquals(destroyed.get(), 0);
+    scope.destroy();
+    scopeDestroyed.countDown();
+    thread.join();
+    Assert.assertEquals(destroyed.get(), 2);
+    Assert.assertEquals(scope.getDestructionCount(), 2);
+  }
+
+  @Test
+  public void testScopedProxies() throws InterruptedException {
+    final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+    try {
+      final FoobarService service4 = context.getBean("service4", FoobarService.class);
+      final FoobarService service5 = context.getBean("service5", FoobarService.class);
+      Assert.assertEquals(service4.toString(), "Service 4");
+      Assert.assertEquals(service5.toString(), "Service 5");
+      Assert.assertEquals(service4.toString(), "Service 4");
+      // only one scoped object per thread
+      Assert.assertTrue(TestConfiguration.SCOPE.getEvictionCount() >= 2);
+    } finally {
+      context.close();
+      TestConfiguration.SCOPE.destroy();
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.mymita.spring;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.aop.scope.ScopedObject;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.support.SimpleThreadScope;
+import org.springframework.util.ClassUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+public class CachingScopedProxyFactoryBeanTest {
+
+  @Configuration
+  static class TestConfiguration {
+
+    static boolean cachingScopedProxies = true;
+
+    @Bean
+    static QualifiedBeanFactoryConfigurer qualifiedBeanFactoryConfigurer() {
+      final QualifiedBeanFactoryConfigurer configurer = new QualifiedBeanFactoryConfigurer();
+      configurer.setCachingScopedProxies(cachingScopedProxies);
+      return configurer;
+    }
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      scopes.put("foobarScope", new SimpleThreadScope());
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      return new FoobarImpl().setName("4");
+    }
+
+    @Bean
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.TARGET_CLASS)
+    FoobarImpl service5() {
+      return new FoobarImpl();
+    }
+  }
+
+  public static class CachedTarget {
+  }
+
+  /**
+   * Loads its own {@link CachedTarget} class like a redeployed application.
+   */
+  private static final class ChildFirstClassLoader extends ClassLoader {
+
+    ChildFirstClassLoader() {
+      super(CachedTarget.class.getClassLoader());
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+      if (!name.equals(CachedTarget.class.getName())) {
+        return super.loadClass(name, resolve);
+      }
+      Class<?> type = findLoadedClass(name);
+      if (type == null) {
+        final InputStream in = getParent().getResourceAsStream(ClassUtils.convertClassNameToResourcePath(name)
+            + ClassUtils.CLASS_FILE_SUFFIX);
+        try {
+          final byte[] bytecode = ByteStreams.toByteArray(in);
+          type = defineClass(name, bytecode, 0, bytecode.length, CachedTarget.class.getProtectionDomain());
+        } catch (final IOException e) {
+          throw new ClassNotFoundException(name, e);
+        } finally {
+          try {
+            in.close();
+          } catch (final IOException e) {
+            // ignore
+          }
+        }
+      }
+      return type;
+    }
+  }
+
+  private static Class<?> proxyClassOfNewContext() {
+    final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+    try {
+      final FoobarImpl service5 = context.getBean("service5", FoobarImpl.class);
+      // the target returning itself returns the proxy
+      Assert.assertSame(service5.setName("5"), service5);
+      Assert.assertEquals(service5.toString(), "Service 5");
+      Assert.assertTrue(((ScopedObject) service5).getTargetObject() instanceof FoobarImpl);
+      Assert.assertEquals(context.getBean("service4").toString(), "Service 4");
+      return service5.getClass();
+    } finally {
+      context.close();
+    }
+  }
+
+  @Test
+  public void testProxyClassReusedAcrossContexts() {
+    final Class<?> proxyClass = proxyClassOfNewContext();
+    Assert.assertTrue(proxyClass.getName().contains("ByCachingScopedProxy"), proxyClass.getName());
+    Assert.assertSame(proxyClassOfNewContext(), proxyClass);
+  }
+
+  @Test
+  public void testOptIn() {
+    TestConfiguration.cachingScopedProxies = false;
+    try {
+      final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+      try {
+        final Object service5 = context.getBean("service5");
+        Assert.assertTrue(AopUtils.isCglibProxy(service5));
+        Assert.assertFalse(service5.getClass().getName().contains("ByCachingScopedProxy"));
+        Assert.assertTrue(AopUtils.isJdkDynamicProxy(context.getBean("service4")));
+      } finally {
+        context.close();
+      }
+    } finally {
+      TestConfiguration.cachingScopedProxies = true;
+    }
+  }
+
+  @Test
+  public void testBytecodeCache() throws ClassNotFoundException {
+    final File directory = Files.createTempDir();
+    System.setProperty(CachingScopedProxyFactoryBean.CACHE_DIRECTORY_PROPERTY, directory.getPath());
+    try {
+      final Class<?> target = new ChildFirstClassLoader().loadClass(CachedTarget.class.getName());
+      final Class<?> proxyClass = CachingScopedProxyFactoryBean.generateProxyClass(target);
+      Assert.assertEquals(directory.listFiles().length, 1);
+      // loaded from the cache into the class loader of the redeployed target
+      final Class<?> redeployedTarget = new ChildFirstClassLoader().loadClass(CachedTarget.class.getName());
+      final Class<?> cachedProxyClass = CachingScopedProxyFactoryBean.generateProxyClass(redeployedTarget);
+      Assert.assertNotSame(cachedProxyClass, proxyClass);
+      Assert.assertEquals(cachedProxyClass.getName(), proxyClass.getName());
+      Assert.assertSame(cachedProxyClass.getSuperclass(), redeployedTarget);
+      Assert.assertEquals(directory.listFiles().length, 1);
+    } finally {
+      System.clearProperty(CachingScopedProxyFactoryBean.CACHE_DIRECTORY_PROPERTY);
+    }
+  }
+
+  @Test
+  public void testBytecodeCacheNameCollision() throws ClassNotFoundException {
+    final File directory = Files.createTempDir();
+    System.setProperty(CachingScopedProxyFactoryBean.CACHE_DIRECTORY_PROPERTY, directory.getPath());
+    try {
+      final Class<?> target = new ChildFirstClassLoader().loadClass(CachedTarget.class.getName());
+      final Class<?> proxyClass = CachingScopedProxyFactoryBean.generateProxyClass(target);
+      // the cached class name is already defined by the class loader, the existing class isn't reused
+      final Class<?> regeneratedProxyClass = CachingScopedProxyFactoryBean.generateProxyClass(target);
+      Assert.assertNotSame(regeneratedProxyClass, proxyClass);
+      Assert.assertSame(regeneratedProxyClass.getSuperclass(), target);
+    } finally {
+      System.clearProperty(CachingScopedProxyFactoryBean.CACHE_DIRECTORY_PROPERTY);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.mymita.spring;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * Needs a JDK {@value ClassDataSharingTrainer#MIN_JAVA_VERSION} or later for the child JVMs, either the JDK running the tests or the
+ * one named by the system property {@value #JAVA_HOME_PROPERTY}.
+ */
+public class ClassDataSharingTrainerTest {
+
+  static final String JAVA_HOME_PROPERTY = "com.mymita.spring.cdsJavaHome";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClassDataSharingTrainerTest.class);
+
+  private File javaHome;
+
+  @BeforeClass
+  public void checkJavaHome() {
+    javaHome = new File(System.getProperty(JAVA_HOME_PROPERTY, System.getProperty("java.home")));
+    if (ClassDataSharingTrainer.javaVersion(javaHome) < ClassDataSharingTrainer.MIN_JAVA_VERSION) {
+      throw new SkipException(String.format("AppCDS needs a JDK %s or later, set %s", ClassDataSharingTrainer.MIN_JAVA_VERSION,
+          JAVA_HOME_PROPERTY));
+    }
+  }
+
+  @DataProvider
+  public Object[][] configurations() {
+    return new Object[][] {
+        {
+          "com.mymita.spring.test1.AutowireTest1$TestConfiguration"
+        }, {
+          "com.mymita.spring.test2.AutowireTest2$TestConfiguration"
+        }, {
+          "com.mymita.spring.test3.AutowireTest3$TestConfiguration"
+        }
+    };
+  }
+
+  @Test(dataProvider = "configurations")
+  public void testTrain(final String configurationClassName) throws IOException, InterruptedException {
+    final ClassDataSharingTrainer trainer = new ClassDataSharingTrainer(configurationClassName).setJavaHome(javaHome);
+    final File directory = Files.createTempDir();
+    trainer.train(directory);
+    Assert.assertTrue(trainer.getClasses().contains(configurationClassName.replace('.', '/')));
+    Assert.assertTrue(trainer.getClasses().contains("com/mymita/spring/FoobarImpl"));
+    // the enhanced configuration class can't be archived
+    for (final String name : trainer.getClasses()) {
+      Assert.assertFalse(name.contains("$$"), name);
+    }
+    // the class path directories are packed into jars
+    for (final String entry : trainer.getClassPath().split(File.pathSeparator)) {
+      Assert.assertTrue(new File(entry).isFile(), entry);
+    }
+    Assert.assertTrue(trainer.dumpArchive().isFile());
+    final Set<String> sharedClasses = trainer.verifyArchive();
+    Assert.assertTrue(sharedClasses.contains(configurationClassName), sharedClasses.toString());
+    Assert.assertTrue(sharedClasses.contains(FoobarImpl.class.getName()), sharedClasses.toString());
+    final long withoutArchive = trainer.measureStartupNanos(false);
+    final long withArchive = trainer.measureStartupNanos(true);
+    Assert.assertTrue(withoutArchive > 0 && withArchive > 0);
+    LOGGER.info(String.format("Startup of %s %.1f ms with the default CDS archive, %.1f ms with the application archive",
+        configurationClassName, withoutArchive / 1000000d, withArchive / 1000000d));
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testOldJdk() throws IOException, InterruptedException {
+    new ClassDataSharingTrainer(FoobarImpl.class.getName()).setJavaHome(Files.createTempDir()).train(Files.createTempDir());
+  }
+}
@@ -0,0 +1,162 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.support.SimpleThreadScope;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+/**
+ * Injection through the {@link CompiledQualifierAutowireCandidateResolver} of the <code>FOO</code> group including the scoped proxies
+ * and of the <code>BAR</code> group, the consumers are prototypes so that their parameters are resolved again for each instance.
+ */
+public class CompiledQualifierAutowireCandidateResolverTest {
+
+  @Configuration
+  static class TestConfiguration {
+
+    @Bean
+    static QualifiedBeanFactoryConfigurer qualifiedBeanFactoryConfigurer() {
+      return new QualifiedBeanFactoryConfigurer();
+    }
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      scopes.put("foobarScope", new SimpleThreadScope());
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    @Qualifier("consumer2")
+    @Scope(BeanDefinition.SCOPE_PROTOTYPE)
+    FoobarServiceConsumer consumer2(@FoobarContext(ContextType.FOO) final List<FoobarService> services) {
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    @Qualifier("consumer3")
+    @Scope(BeanDefinition.SCOPE_PROTOTYPE)
+    FoobarServiceConsumer consumer3(@FoobarContext(ContextType.BAR) final List<FoobarService> services) {
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    FoobarService service1() {
+      return new FoobarImpl().setName("1");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    FoobarService service2() {
+      return new FoobarImpl().setName("2");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope")
+    FoobarService service3() {
+      return new FoobarImpl().setName("3");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      return new FoobarImpl().setName("4");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.TARGET_CLASS)
+    FoobarService service5() {
+      return new FoobarImpl().setName("5");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.BAR)
+    FoobarService service6() {
+      return new FoobarImpl().setName("6");
+    }
+  }
+
+  private static List<String> names(final List<FoobarService> services) {
+    final List<String> result = new ArrayList<String>();
+    for (final FoobarService service : services) {
+      result.add(service.toString());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  private AnnotationConfigApplicationContext context;
+
+  private CompiledQualifierAutowireCandidateResolver resolver;
+
+  @BeforeClass
+  public void createContext() {
+    context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+    resolver = (CompiledQualifierAutowireCandidateResolver) context.getDefaultListableBeanFactory().getAutowireCandidateResolver();
+  }
+
+  @AfterClass
+  public void closeContext() {
+    context.close();
+  }
+
+  @Test
+  public void testFooWithScopedProxies() {
+    final List<FoobarService> services = context.getBean("consumer2", FoobarServiceConsumer.class).getServices();
+    Assert.assertEquals(names(services), Arrays.asList("Service 2", "Service 3", "Service 4", "Service 5"));
+    int proxies = 0;
+    for (final FoobarService service : services) {
+      proxies += AopUtils.isAopProxy(service) ? 1 : 0;
+    }
+    Assert.assertEquals(proxies, 2);
+    for (final String beanName : new String[] {
+        "service4", "service5"
+    }) {
+      Assert.assertTrue(context.getBeanFactory().getBeanDefinition(beanName).getAttribute(CompiledQualifierMatcher.ATTRIBUTE)
+          instanceof CompiledQualifierMatcher[], beanName);
+    }
+  }
+
+  @Test
+  public void testBar() {
+    Assert.assertEquals(names(context.getBean("consumer3", FoobarServiceConsumer.class).getServices()),
+        Collections.singletonList("Service 6"));
+  }
+
+  @Test(dependsOnMethods = {
+      "testFooWithScopedProxies", "testBar"
+  })
+  public void testParameterAnnotationValuesCached() {
+    final int cached = resolver.cachedAttributeValues();
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(context.getBean("consumer2", FoobarServiceConsumer.class).getServices().size(), 4);
+      Assert.assertEquals(context.getBean("consumer3", FoobarServiceConsumer.class).getServices().size(), 1);
+    }
+    // the parameter annotations are parsed again for each consumer but their values are read once
+    Assert.assertEquals(resolver.cachedAttributeValues(), cached);
+  }
+}
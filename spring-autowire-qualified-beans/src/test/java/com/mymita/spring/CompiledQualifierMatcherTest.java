@@ -0,0 +1,65 @@
+package com.mymita.spring;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.support.AutowireCandidateQualifier;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+public class CompiledQualifierMatcherTest {
+
+  @FoobarContext
+  @Qualifier("consumer2")
+  private Object defaultContext;
+
+  @FoobarContext(ContextType.FOO)
+  private Object fooContext;
+
+  @FoobarContext(ContextType.BAR)
+  private Object barContext;
+
+  private static FoobarContext context(final String field) throws NoSuchFieldException {
+    return CompiledQualifierMatcherTest.class.getDeclaredField(field).getAnnotation(FoobarContext.class);
+  }
+
+  private static CompiledQualifierMatcher compile(final AutowireCandidateQualifier qualifier) {
+    final RootBeanDefinition beanDefinition = new RootBeanDefinition(FoobarImpl.class);
+    beanDefinition.addQualifier(qualifier);
+    return CompiledQualifierMatcher.compile(FoobarContext.class, qualifier, beanDefinition);
+  }
+
+  @Test
+  public void testEnumValue() throws Exception {
+    final CompiledQualifierMatcher matcher = compile(new AutowireCandidateQualifier(FoobarContext.class, ContextType.BAR));
+    Assert.assertTrue(matcher.matches(context("barContext")));
+    Assert.assertFalse(matcher.matches(context("fooContext")));
+    Assert.assertFalse(matcher.matches(context("defaultContext")));
+  }
+
+  @Test
+  public void testStringValue() throws Exception {
+    // XML qualifiers define the value as string
+    final CompiledQualifierMatcher matcher = compile(new AutowireCandidateQualifier(FoobarContext.class, "BAR"));
+    Assert.assertTrue(matcher.matches(context("barContext")));
+    Assert.assertFalse(matcher.matches(context("fooContext")));
+  }
+
+  @Test
+  public void testDefaultValue() throws Exception {
+    final CompiledQualifierMatcher matcher = compile(new AutowireCandidateQualifier(FoobarContext.class));
+    Assert.assertTrue(matcher.matches(context("defaultContext")));
+    Assert.assertTrue(matcher.matches(context("fooContext")));
+    Assert.assertFalse(matcher.matches(context("barContext")));
+  }
+
+  @Test
+  public void testNotCompilable() throws Exception {
+    // unknown enum constant
+    Assert.assertNull(compile(new AutowireCandidateQualifier(FoobarContext.class, "BAZ")));
+    // plain @Qualifier without value matches the bean name
+    final AutowireCandidateQualifier qualifier = new AutowireCandidateQualifier(Qualifier.class);
+    Assert.assertNull(CompiledQualifierMatcher.compile(Qualifier.class, qualifier, new RootBeanDefinition(FoobarImpl.class)));
+  }
+}
@@ -0,0 +1,159 @@
+package com.mymita.spring;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.beans.factory.support.CglibSubclassingInstantiationStrategy;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.InstantiationStrategyAccessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.support.SimpleThreadScope;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class FastFactoryMethodInstantiationStrategyTest {
+
+  @Configuration
+  static class TestConfiguration {
+
+    @Bean
+    static QualifiedBeanFactoryConfigurer qualifiedBeanFactoryConfigurer() {
+      final QualifiedBeanFactoryConfigurer configurer = new QualifiedBeanFactoryConfigurer();
+      configurer.setFastFactoryMethods(true);
+      return configurer;
+    }
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      scopes.put("foobarScope", new SimpleThreadScope());
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    FoobarService service1() {
+      return new FoobarImpl().setName("1");
+    }
+
+    @Bean
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      return new FoobarImpl().setName("4");
+    }
+
+    @Bean
+    @Scope(BeanDefinition.SCOPE_PROTOTYPE)
+    FoobarServiceConsumer consumer(final List<FoobarService> services) {
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    @Qualifier("inter-bean")
+    FoobarServiceConsumer interBeanConsumer() {
+      // the enhanced configuration class returns the singleton
+      return new FoobarServiceConsumerImpl(Collections.singletonList(service1()));
+    }
+
+    @Bean
+    @Lazy
+    String failing() {
+      throw new IllegalStateException("failing");
+    }
+  }
+
+  private AnnotationConfigApplicationContext context;
+
+  @BeforeClass
+  public void createContext() {
+    context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+  }
+
+  @AfterClass
+  public void closeContext() {
+    context.close();
+  }
+
+  private FastFactoryMethodInstantiationStrategy strategy() {
+    return (FastFactoryMethodInstantiationStrategy) InstantiationStrategyAccessor
+        .getInstantiationStrategy((DefaultListableBeanFactory) context.getBeanFactory());
+  }
+
+  @Test
+  public void testPrototypeWithArguments() throws NoSuchMethodException {
+    final FoobarServiceConsumer consumer = context.getBean("consumer", FoobarServiceConsumer.class);
+    Assert.assertNotSame(context.getBean("consumer"), consumer);
+    Assert.assertEquals(consumer.getServices().size(), 2);
+    Assert.assertTrue(strategy().isFastInvoked(TestConfiguration.class.getDeclaredMethod("consumer", List.class)));
+  }
+
+  @Test
+  public void testScoped() throws NoSuchMethodException {
+    Assert.assertEquals(context.getBean("service4").toString(), "Service 4");
+    Assert.assertTrue(strategy().isFastInvoked(TestConfiguration.class.getDeclaredMethod("service4")));
+  }
+
+  @Test
+  public void testStatic() throws NoSuchMethodException {
+    Assert.assertTrue(strategy().isFastInvoked(TestConfiguration.class.getDeclaredMethod("customScopes")));
+  }
+
+  @Test
+  public void testInterBeanReference() {
+    final FoobarServiceConsumer consumer = context.getBean("interBeanConsumer", FoobarServiceConsumer.class);
+    Assert.assertSame(consumer.getServices().get(0), context.getBean("service1"));
+  }
+
+  @Test
+  public void testFactoryMethodException() {
+    try {
+      context.getBean("failing");
+      Assert.fail();
+    } catch (final BeanCreationException e) {
+      Assert.assertTrue(e.getMostSpecificCause() instanceof IllegalStateException, e.toString());
+    }
+  }
+
+  @Test
+  public void testIllegalArguments() throws NoSuchMethodException {
+    try {
+      strategy().instantiate(new RootBeanDefinition(FoobarServiceConsumer.class), "consumer", context.getBeanFactory(),
+          context.getBean(TestConfiguration.class), TestConfiguration.class.getDeclaredMethod("consumer", List.class),
+          new Object[] { "no list" });
+      Assert.fail();
+    } catch (final BeanDefinitionStoreException e) {
+      Assert.assertTrue(e.getMessage().startsWith("Illegal arguments to factory method"), e.getMessage());
+    }
+  }
+
+  @Test
+  public void testCustomStrategyIsKept() {
+    final CglibSubclassingInstantiationStrategy custom = new CglibSubclassingInstantiationStrategy() {
+    };
+    final AnnotationConfigApplicationContext customContext = new AnnotationConfigApplicationContext();
+    customContext.getDefaultListableBeanFactory().setInstantiationStrategy(custom);
+    customContext.register(TestConfiguration.class);
+    customContext.refresh();
+    try {
+      Assert.assertSame(InstantiationStrategyAccessor.getInstantiationStrategy(customContext.getDefaultListableBeanFactory()), custom);
+    } finally {
+      customContext.close();
+    }
+  }
+}
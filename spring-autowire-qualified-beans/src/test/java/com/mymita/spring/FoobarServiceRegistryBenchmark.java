@@ -0,0 +1,203 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+/**
+ * Read throughput of the {@link FoobarServiceRegistry} compared with the consumer it replaces, a {@link FoobarServiceConsumer} whose
+ * list is changed at runtime under its lock. Readers iterate the services of a context type while a writer registers and unregisters a
+ * service every {@value #WRITE_INTERVAL_MICROS} µs. The registry gains when the readers run in parallel and contend for the lock of the
+ * consumer, with fewer cores than readers the lock is hardly contended and the synchronized consumer may read faster.
+ *
+ * Not part of the unit tests, the benchmark is in the {@value #GROUP} group which the default test run excludes. Run it with
+ * <code>mvn test -Pbenchmark</code>.
+ */
+public class FoobarServiceRegistryBenchmark {
+
+  static final String GROUP = "benchmark";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FoobarServiceRegistryBenchmark.class);
+
+  private static final int READERS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+  private static final int SERVICES = 8;
+
+  private static final int WARMUP_ROUNDS = 3;
+
+  private static final int ROUNDS = 5;
+
+  private static final long ROUND_MILLIS = 500;
+
+  private static final long WRITE_INTERVAL_MICROS = 100;
+
+  /**
+   * A read and write path of the services of a context type.
+   */
+  private interface Services {
+
+    /**
+     * @return number of services visited
+     */
+    int read();
+
+    void add(FoobarService service);
+
+    void remove(FoobarService service);
+  }
+
+  /**
+   * The consumer path before the registry: the services of the consumer are changed in place, readers and writers share its lock.
+   */
+  private static final class SynchronizedConsumer implements FoobarServiceConsumer, Services {
+
+    private final List<FoobarService> services = new ArrayList<FoobarService>();
+
+    @Override
+    public synchronized List<FoobarService> getServices() {
+      return services;
+    }
+
+    @Override
+    public int read() {
+      int visited = 0;
+      synchronized (this) {
+        for (final FoobarService service : getServices()) {
+          visited += service == null ? 0 : 1;
+        }
+      }
+      return visited;
+    }
+
+    @Override
+    public synchronized void add(final FoobarService service) {
+      services.add(service);
+    }
+
+    @Override
+    public synchronized void remove(final FoobarService service) {
+      services.remove(service);
+    }
+  }
+
+  private static final class RegistryConsumer implements Services {
+
+    private final FoobarServiceRegistry registry = new FoobarServiceRegistry();
+
+    private final FoobarServiceConsumer consumer = new FoobarServiceRegistryConsumer(registry, ContextType.FOO);
+
+    @Override
+    public int read() {
+      int visited = 0;
+      for (final FoobarService service : consumer.getServices()) {
+        visited += service == null ? 0 : 1;
+      }
+      return visited;
+    }
+
+    @Override
+    public void add(final FoobarService service) {
+      registry.register(ContextType.FOO, service);
+    }
+
+    @Override
+    public void remove(final FoobarService service) {
+      registry.unregister(ContextType.FOO, service);
+    }
+  }
+
+  /**
+   * @return reads per second of all readers
+   */
+  private static double measure(final Services services) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch stop = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+    try {
+      final List<Future<Long>> readers = new ArrayList<Future<Long>>();
+      for (int i = 0; i < READERS; i++) {
+        readers.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws InterruptedException {
+            start.await();
+            long reads = 0;
+            while (stop.getCount() > 0) {
+              // the churned service may be visible, the stable ones always are
+              if (services.read() < SERVICES) {
+                throw new IllegalStateException("Inconsistent read");
+              }
+              reads++;
+            }
+            return reads;
+          }
+        }));
+      }
+      final Future<Long> writer = executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() throws InterruptedException {
+          start.await();
+          long writes = 0;
+          while (stop.getCount() > 0) {
+            final FoobarService tenant = new FoobarImpl().setName("tenant " + writes++);
+            services.add(tenant);
+            services.remove(tenant);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(WRITE_INTERVAL_MICROS));
+          }
+          return writes;
+        }
+      });
+      final long begin = System.nanoTime();
+      start.countDown();
+      Thread.sleep(ROUND_MILLIS);
+      stop.countDown();
+      long reads = 0;
+      for (final Future<Long> reader : readers) {
+        reads += reader.get();
+      }
+      final long elapsed = System.nanoTime() - begin;
+      writer.get();
+      return reads * 1e9 / elapsed;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static Services populate(final Services services) {
+    for (int i = 0; i < SERVICES; i++) {
+      services.add(new FoobarImpl().setName(String.valueOf(i)));
+    }
+    return services;
+  }
+
+  @Test(groups = GROUP)
+  public void benchmarkConcurrentReads() throws Exception {
+    final Services registry = populate(new RegistryConsumer());
+    final Services synchronizedConsumer = populate(new SynchronizedConsumer());
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      measure(registry);
+      measure(synchronizedConsumer);
+    }
+    double registryReads = 0;
+    double synchronizedReads = 0;
+    for (int i = 0; i < ROUNDS; i++) {
+      registryReads += measure(registry) / ROUNDS;
+      synchronizedReads += measure(synchronizedConsumer) / ROUNDS;
+    }
+    LOGGER.info(String.format("%s readers on %s cores: registry %.0f reads/s, synchronized consumer %.0f reads/s (%.1fx)", READERS,
+        Runtime.getRuntime().availableProcessors(), registryReads, synchronizedReads, registryReads / synchronizedReads));
+    Assert.assertTrue(registryReads > 0 && synchronizedReads > 0);
+  }
+}
@@ -0,0 +1,180 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext.ContextType;
+
+public class FoobarServiceRegistryTest {
+
+  @Configuration
+  static class TestConfiguration {
+
+    @Bean
+    FoobarServiceRegistry registry() {
+      return new FoobarServiceRegistry();
+    }
+
+    @Bean
+    FoobarService service1() {
+      return new FoobarImpl().setName("1");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    FoobarService service2() {
+      return new FoobarImpl().setName("2");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.BAR)
+    FoobarService service6() {
+      return new FoobarImpl().setName("6");
+    }
+  }
+
+  private static final int READERS = 4;
+
+  private static final int WRITERS = 4;
+
+  private static final int SERVICES_PER_WRITER = 200;
+
+  @Test
+  public void testPopulatedFromBeanFactory() {
+    final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+    try {
+      final FoobarServiceRegistry registry = context.getBean(FoobarServiceRegistry.class);
+      Assert.assertEquals(registry.getServices(ContextType.FOO).toString(), "[Service 2]");
+      Assert.assertEquals(registry.getServices(ContextType.BAR).toString(), "[Service 6]");
+      Assert.assertEquals(registry.getServices().size(), 2);
+    } finally {
+      context.close();
+    }
+  }
+
+  @Test
+  public void testRegisterAndUnregister() {
+    final FoobarServiceRegistry registry = new FoobarServiceRegistry();
+    final FoobarServiceConsumer consumer = new FoobarServiceRegistryConsumer(registry, ContextType.FOO);
+    final List<String> changes = new ArrayList<String>();
+    registry.addListener(new FoobarServiceRegistry.Listener() {
+      @Override
+      public void servicesChanged(final ContextType contextType, final List<FoobarService> services) {
+        changes.add(contextType + " " + services);
+      }
+    });
+    final FoobarService service = new FoobarImpl().setName("tenant");
+    final List<FoobarService> before = consumer.getServices();
+    Assert.assertTrue(registry.register(ContextType.FOO, service));
+    Assert.assertFalse(registry.register(ContextType.FOO, service));
+    Assert.assertEquals(consumer.getServices().toString(), "[Service tenant]");
+    // snapshots don't change
+    Assert.assertTrue(before.isEmpty());
+    Assert.assertTrue(registry.getServices(ContextType.BAR).isEmpty());
+    Assert.assertTrue(registry.unregister(ContextType.FOO, service));
+    Assert.assertFalse(registry.unregister(ContextType.FOO, service));
+    Assert.assertTrue(consumer.getServices().isEmpty());
+    Assert.assertEquals(changes.toString(), "[FOO [Service tenant], FOO []]");
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void testSnapshotUnmodifiable() {
+    new FoobarServiceRegistry().getServices(ContextType.FOO).add(new FoobarImpl());
+  }
+
+  /**
+   * Writers register their services concurrently in a fixed order while readers check every snapshot: a snapshot holds the services
+   * of each writer as a prefix of its registration order, later snapshots of a reader never lose a service and no registration is
+   * lost. The readers stop once all writers are done, no timing is involved.
+   */
+  @Test
+  public void testConsistentSnapshots() throws Exception {
+    final FoobarServiceRegistry registry = new FoobarServiceRegistry();
+    final FoobarService[][] services = new FoobarService[WRITERS][SERVICES_PER_WRITER];
+    final Map<FoobarService, int[]> positions = new IdentityHashMap<FoobarService, int[]>();
+    for (int writer = 0; writer < WRITERS; writer++) {
+      for (int i = 0; i < SERVICES_PER_WRITER; i++) {
+        services[writer][i] = new FoobarImpl().setName(writer + "-" + i);
+        positions.put(services[writer][i], new int[] {
+            writer, i
+        });
+      }
+    }
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+    final ExecutorService executor = Executors.newFixedThreadPool(READERS + WRITERS);
+    try {
+      final List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+      for (int reader = 0; reader < READERS; reader++) {
+        readers.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws InterruptedException {
+            start.await();
+            int previousSize = 0;
+            boolean done;
+            do {
+              // read once more after the writers are done
+              done = writersDone.getCount() == 0;
+              final List<FoobarService> snapshot = registry.getServices(ContextType.FOO);
+              final int[] next = new int[WRITERS];
+              for (final FoobarService service : snapshot) {
+                final int[] position = positions.get(service);
+                if (position == null || position[1] != next[position[0]]++) {
+                  throw new IllegalStateException("Inconsistent snapshot " + snapshot);
+                }
+              }
+              if (snapshot.size() < previousSize) {
+                throw new IllegalStateException("Snapshot lost services " + snapshot);
+              }
+              previousSize = snapshot.size();
+            } while (!done);
+            return previousSize;
+          }
+        }));
+      }
+      for (int writer = 0; writer < WRITERS; writer++) {
+        final FoobarService[] ownServices = services[writer];
+        executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws InterruptedException {
+            start.await();
+            try {
+              for (final FoobarService service : ownServices) {
+                if (!registry.register(ContextType.FOO, service)) {
+                  throw new IllegalStateException("Not registered " + service);
+                }
+              }
+            } finally {
+              writersDone.countDown();
+            }
+            return null;
+          }
+        });
+      }
+      start.countDown();
+      Assert.assertTrue(writersDone.await(10, TimeUnit.SECONDS));
+      for (final Future<Integer> reader : readers) {
+        Assert.assertEquals(reader.get(10, TimeUnit.SECONDS).intValue(), WRITERS * SERVICES_PER_WRITER);
+      }
+      Assert.assertEquals(registry.getServices(ContextType.FOO).size(), WRITERS * SERVICES_PER_WRITER);
+      Assert.assertTrue(registry.getServices(ContextType.BAR).isEmpty());
+    } finally {
+      executor.shutdownNow();
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package com.mymita.spring;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PooledScopeTest {
+
+  @Configuration
+  static class TestConfiguration {
+
+    @Bean
+    static PooledScope pooledScope() {
+      final PooledScope scope = new PooledScope();
+      scope.setScopeName("pooled");
+      return scope;
+    }
+
+    @Bean
+    @Scope(value = "pooled", proxyMode = ScopedProxyMode.TARGET_CLASS)
+    FoobarImpl service5() {
+      return new FoobarImpl();
+    }
+  }
+
+  private static class CountingObjectFactory implements ObjectFactory<Object> {
+
+    final AtomicInteger created = new AtomicInteger();
+
+    @Override
+    public Object getObject() {
+      return "object " + created.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void testSpan() throws Exception {
+    final PooledScope scope = new PooledScope();
+    scope.setMinSize(1);
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    final Callable<Object> borrow = new Callable<Object>() {
+      @Override
+      public Object call() {
+        final Object object = scope.get("a", objectFactory);
+        Assert.assertSame(scope.get("a", objectFactory), object);
+        return object;
+      }
+    };
+    final Object first = scope.execute(borrow);
+    Assert.assertEquals(scope.getIdleCount("a"), 1);
+    // returned object is reused
+    Assert.assertSame(scope.execute(borrow), first);
+    Assert.assertEquals(objectFactory.created.get(), 1);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testNoSpan() {
+    new PooledScope().get("a", new CountingObjectFactory());
+  }
+
+  @Test
+  public void testConcurrentSpans() throws Exception {
+    final PooledScope scope = new PooledScope();
+    scope.setMaxSize(2);
+    scope.setBorrowTimeoutMillis(10);
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    final CountDownLatch borrowed = new CountDownLatch(2);
+    final CountDownLatch done = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Callable<Object> holdObject = new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          return scope.execute(new Callable<Object>() {
+            @Override
+            public Object call() throws InterruptedException {
+              final Object object = scope.get("a", objectFactory);
+              borrowed.countDown();
+              done.await(5, TimeUnit.SECONDS);
+              return object;
+            }
+          });
+        }
+      };
+      final Future<Object> first = executor.submit(holdObject);
+      final Future<Object> second = executor.submit(holdObject);
+      Assert.assertTrue(borrowed.await(5, TimeUnit.SECONDS));
+      // pool is exhausted
+      scope.begin();
+      try {
+        scope.get("a", objectFactory);
+        Assert.fail("Pool should be exhausted");
+      } catch (final IllegalStateException e) {
+        // expected
+      } finally {
+        scope.end();
+      }
+      done.countDown();
+      Assert.assertNotEquals(first.get(), second.get());
+      Assert.assertEquals(scope.getIdleCount("a"), 2);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testValidation() throws Exception {
+    final PooledScope scope = new PooledScope();
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    final AtomicInteger destroyed = new AtomicInteger();
+    scope.setValidator(new PooledScope.Validator() {
+      @Override
+      public boolean isValid(final String name, final Object object) {
+        return !"object 1".equals(object);
+      }
+    });
+    scope.execute(new Callable<Object>() {
+      @Override
+      public Object call() {
+        scope.get("a", new ObjectFactory<Object>() {
+          @Override
+          public Object getObject() {
+            final Object object = objectFactory.getObject();
+            scope.registerDestructionCallback("a", new Runnable() {
+              @Override
+              public void run() {
+                destroyed.incrementAndGet();
+              }
+            });
+            return object;
+          }
+        });
+        return null;
+      }
+    });
+    // object 1 is invalid and gets destroyed
+    Assert.assertEquals(scope.execute(new Callable<Object>() {
+      @Override
+      public Object call() {
+        return scope.get("a", objectFactory);
+      }
+    }), "object 2");
+    Assert.assertEquals(destroyed.get(), 1);
+  }
+
+  @Test
+  public void testScopedProxy() throws Exception {
+    final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+    final PooledScope scope = context.getBean(PooledScope.class);
+    try {
+      final FoobarImpl service = context.getBean("service5", FoobarImpl.class);
+      final CountDownLatch borrowed = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(1);
+      final Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            scope.execute(new Callable<Object>() {
+              @Override
+              public Object call() throws InterruptedException {
+                // the object is borrowed for the whole span
+                service.setName("span");
+                borrowed.countDown();
+                done.await(5, TimeUnit.SECONDS);
+                Assert.assertEquals(service.toString(), "Service span");
+                return null;
+              }
+            });
+          } catch (final Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      });
+      thread.start();
+      Assert.assertTrue(borrowed.await(5, TimeUnit.SECONDS));
+      Assert.assertEquals(scope.getIdleCount("scopedTarget.service5"), 0);
+      // without span each call borrows an object and returns it
+      service.setName("call");
+      Assert.assertEquals(scope.getIdleCount("scopedTarget.service5"), 1);
+      Assert.assertEquals(service.toString(), "Service call");
+      Assert.assertEquals(scope.getSize("scopedTarget.service5"), 2);
+      done.countDown();
+      thread.join();
+      Assert.assertEquals(scope.getIdleCount("scopedTarget.service5"), 2);
+    } finally {
+      context.close();
+      scope.destroy();
+    }
+  }
+
+  @Test
+  public void testConcurrentFirstBorrowers() throws Exception {
+    final PooledScope scope = new PooledScope();
+    scope.setMinSize(2);
+    scope.setMaxSize(2);
+    scope.setBorrowTimeoutMillis(5000);
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    final int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<Object>> results = new ArrayList<Future<Object>>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            start.await();
+            return scope.execute(new Callable<Object>() {
+              @Override
+              public Object call() {
+                return scope.get("a", objectFactory);
+              }
+            });
+          }
+        }));
+      }
+      start.countDown();
+      for (final Future<Object> result : results) {
+        Assert.assertNotNull(result.get());
+      }
+      // the warm-up and the borrowers create objects under the same permits
+      Assert.assertTrue(objectFactory.created.get() <= 2, objectFactory.created.toString());
+      Assert.assertEquals(scope.getSize("a"), objectFactory.created.get());
+      Assert.assertEquals(scope.getIdleCount("a"), objectFactory.created.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testMinSizeKept() throws Exception {
+    final PooledScope scope = new PooledScope();
+    scope.setMinSize(1);
+    scope.setValidator(new PooledScope.Validator() {
+      @Override
+      public boolean isValid(final String name, final Object object) {
+        return !"object 1".equals(object);
+      }
+    });
+    final CountingObjectFactory objectFactory = new CountingObjectFactory();
+    // the warmed up object 1 is invalid, it's destroyed and replaced
+    Assert.assertEquals(scope.execute(new Callable<Object>() {
+      @Override
+      public Object call() {
+        return scope.get("a", objectFactory);
+      }
+    }), "object 2");
+    Assert.assertEquals(scope.getSize("a"), 1);
+    Assert.assertEquals(scope.getIdleCount("a"), 1);
+  }
+}
@@ -0,0 +1,42 @@
+package com.mymita.spring;
+
+import org.springframework.beans.factory.annotation.QualifierAnnotationAutowireCandidateResolver;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class QualifiedBeanFactoryConfigurerTest {
+
+  private static DefaultListableBeanFactory beanFactory() {
+    final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+    beanFactory.setAutowireCandidateResolver(new QualifierAnnotationAutowireCandidateResolver());
+    return beanFactory;
+  }
+
+  @Test
+  public void testInstallsCompiledQualifiers() {
+    final DefaultListableBeanFactory beanFactory = beanFactory();
+    new QualifiedBeanFactoryConfigurer().postProcessBeanFactory(beanFactory);
+    Assert.assertEquals(beanFactory.getAutowireCandidateResolver().getClass(), CompiledQualifierAutowireCandidateResolver.class);
+  }
+
+  @Test
+  public void testKeepsCustomResolver() {
+    final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+    final QualifierAnnotationAutowireCandidateResolver resolver = new QualifierAnnotationAutowireCandidateResolver() {
+      // custom resolver
+    };
+    beanFactory.setAutowireCandidateResolver(resolver);
+    new QualifiedBeanFactoryConfigurer().postProcessBeanFactory(beanFactory);
+    Assert.assertSame(beanFactory.getAutowireCandidateResolver(), resolver);
+  }
+
+  @Test
+  public void testDisabled() {
+    final DefaultListableBeanFactory beanFactory = beanFactory();
+    final QualifiedBeanFactoryConfigurer configurer = new QualifiedBeanFactoryConfigurer();
+    configurer.setCompiledQualifiers(false);
+    configurer.postProcessBeanFactory(beanFactory);
+    Assert.assertEquals(beanFactory.getAutowireCandidateResolver().getClass(), QualifierAnnotationAutowireCandidateResolver.class);
+  }
+}
@@ -0,0 +1,39 @@
+package com.mymita.spring;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class StartupGraphRecorderTest {
+
+  private static Set<String> dependencies(final String... beanNames) {
+    return new LinkedHashSet<String>(Arrays.asList(beanNames));
+  }
+
+  /**
+   * The cycle a -> b -> c -> a is searched from a first, the truncated paths of b and c must not be reused for d.
+   */
+  @Test
+  public void testCriticalPathWithCycle() {
+    final Map<String, Set<String>> graph = new LinkedHashMap<String, Set<String>>();
+    graph.put("a", dependencies("b"));
+    graph.put("b", dependencies("c"));
+    graph.put("c", dependencies("a"));
+    graph.put("d", dependencies("b"));
+    final Map<String, Long> timings = new HashMap<String, Long>();
+    timings.put("a", 100L);
+    timings.put("b", 1L);
+    timings.put("c", 1L);
+    timings.put("d", 1L);
+    final StartupGraphRecorder recorder = new StartupGraphRecorder();
+    recorder.computeCriticalPath(graph, timings);
+    Assert.assertEquals(recorder.getCriticalPath(), Arrays.asList("d", "b", "c", "a"));
+    Assert.assertEquals(recorder.getCriticalPathNanos(), 103);
+  }
+}
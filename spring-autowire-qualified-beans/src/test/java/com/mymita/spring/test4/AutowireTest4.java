@@ -0,0 +1,163 @@
+package com.mymita.spring.test4;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.support.SimpleThreadScope;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext;
+import com.mymita.spring.FoobarContext.ContextType;
+import com.mymita.spring.FoobarImpl;
+import com.mymita.spring.FoobarService;
+import com.mymita.spring.FoobarServiceConsumer;
+import com.mymita.spring.FoobarServiceConsumerImpl;
+import com.mymita.spring.QualifierInitPolicies;
+import com.mymita.spring.QualifierInitPolicy;
+import com.mymita.spring.QualifierInitPolicy.Mode;
+
+/**
+ * Test {@link QualifierInitPolicy} declarations: all <code>BAR</code> beans (and their consumer) are skipped, all <code>FOO</code> beans
+ * are lazy.
+ */
+@ContextConfiguration(classes = {
+  AutowireTest4.TestConfiguration.class
+})
+public class AutowireTest4 extends AbstractTestNGSpringContextTests {
+
+  @Configuration
+  @QualifierInitPolicies({
+    @QualifierInitPolicy(qualifier = FoobarContext.class, mode = Mode.SKIP, profiles = "unknown"),
+    @QualifierInitPolicy(qualifier = FoobarContext.class, values = "BAR", mode = Mode.SKIP),
+    @QualifierInitPolicy(qualifier = Qualifier.class, values = "consumer3", mode = Mode.SKIP),
+    @QualifierInitPolicy(qualifier = FoobarContext.class, values = "FOO")
+  })
+  static class TestConfiguration {
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      scopes.put("foobarScope", new SimpleThreadScope());
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    @Qualifier("consumer1")
+    FoobarServiceConsumer consumer1(final List<FoobarService> services) {
+      LOGGER.debug("Create consumer with services '{}'", services);
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    @Qualifier("consumer2")
+    FoobarServiceConsumer consumer2(@FoobarContext(ContextType.FOO) final List<FoobarService> services) {
+      LOGGER.debug("Create consumer with services '{}'", services);
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    @Qualifier("consumer3")
+    FoobarServiceConsumer consumer3(@FoobarContext(ContextType.BAR) final List<FoobarService> services) {
+      LOGGER.debug("Create consumer with services '{}'", services);
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    FoobarService service1() {
+      return new FoobarImpl().setName("1");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    FoobarService service2() {
+      return new FoobarImpl().setName("2");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Lazy(false)
+    FoobarService service3() {
+      return new FoobarImpl().setName("3");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      return new FoobarImpl().setName("4");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.TARGET_CLASS)
+    FoobarService service5() {
+      return new FoobarImpl().setName("5");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.BAR)
+    FoobarService service6() {
+      return new FoobarImpl().setName("6");
+    }
+  }
+
+  @Autowired
+  @Qualifier("consumer1")
+  transient FoobarServiceConsumer consumer1;
+  @Autowired
+  @Qualifier("consumer2")
+  transient FoobarServiceConsumer consumer2;
+  @Autowired(required = false)
+  @Qualifier("consumer3")
+  transient FoobarServiceConsumer consumer3;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AutowireTest4.class);
+
+  private ConfigurableListableBeanFactory beanFactory() {
+    return ((ConfigurableApplicationContext) applicationContext).getBeanFactory();
+  }
+
+  @Test
+  public void testAutowiredBeans() {
+    Assert.assertEquals(consumer1.getServices().size(), 5);
+  }
+
+  @Test
+  public void testAutowiredQualifiedBeansBar() {
+    // service6 and consumer3 are skipped
+    Assert.assertNull(consumer3);
+    Assert.assertFalse(beanFactory().containsBeanDefinition("service6"));
+  }
+
+  @Test
+  public void testAutowiredQualifiedBeansFoo() {
+    // lazy beans are still autowired into qualified collections
+    Assert.assertEquals(consumer2.getServices().size(), 4);
+  }
+
+  @Test
+  public void testLazyQualifiedBeans() {
+    Assert.assertTrue(beanFactory().getBeanDefinition("service2").isLazyInit());
+    Assert.assertTrue(beanFactory().getBeanDefinition("service4").isLazyInit());
+    Assert.assertFalse(beanFactory().getBeanDefinition("service3").isLazyInit());
+    Assert.assertFalse(beanFactory().getBeanDefinition("service1").isLazyInit());
+  }
+}
@@ -0,0 +1,121 @@
+package com.mymita.spring.test5;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.support.SimpleThreadScope;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.mymita.spring.FoobarContext;
+import com.mymita.spring.FoobarContext.ContextType;
+import com.mymita.spring.FoobarImpl;
+import com.mymita.spring.FoobarService;
+import com.mymita.spring.FoobarServiceConsumer;
+import com.mymita.spring.FoobarServiceConsumerImpl;
+import com.mymita.spring.StartupGraphRecorder;
+
+/**
+ * Test the {@link StartupGraphRecorder}: the slow <code>service2</code> must be on the critical path.
+ */
+@ContextConfiguration(classes = {
+  AutowireTest5.TestConfiguration.class
+})
+public class AutowireTest5 extends AbstractTestNGSpringContextTests {
+
+  @Configuration
+  static class TestConfiguration {
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      scopes.put("foobarScope", new SimpleThreadScope());
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    static StartupGraphRecorder startupGraphRecorder() {
+      final StartupGraphRecorder recorder = new StartupGraphRecorder();
+      recorder.setOutputFile(GRAPH_FILE);
+      return recorder;
+    }
+
+    @Bean
+    @Qualifier("consumer2")
+    FoobarServiceConsumer consumer2(@FoobarContext(ContextType.FOO) final List<FoobarService> services) {
+      LOGGER.debug("Create consumer with services '{}'", services);
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    @DependsOn("service1")
+    @FoobarContext(ContextType.FOO)
+    FoobarService service2() throws InterruptedException {
+      Thread.sleep(SLOW_MILLIS);
+      return new FoobarImpl().setName("2");
+    }
+
+    @Bean
+    FoobarService service1() {
+      return new FoobarImpl().setName("1");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      return new FoobarImpl().setName("4");
+    }
+  }
+
+  private static final long SLOW_MILLIS = 50;
+
+  private static final File GRAPH_FILE = new File(System.getProperty("java.io.tmpdir"), "autowire-test5-startup-graph.json");
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AutowireTest5.class);
+
+  @Autowired
+  StartupGraphRecorder recorder;
+
+  @Test
+  public void testCriticalPath() {
+    final List<String> criticalPath = recorder.getCriticalPath();
+    Assert.assertEquals(criticalPath.get(0), "consumer2", "Critical path " + criticalPath);
+    Assert.assertTrue(criticalPath.contains("service2"), "Critical path " + criticalPath);
+    Assert.assertTrue(recorder.getCriticalPathNanos() >= SLOW_MILLIS * 1000000, "Critical path " + criticalPath);
+  }
+
+  @Test
+  public void testDependencies() {
+    Assert.assertTrue(recorder.getDependencies("consumer2").contains("service2"));
+    Assert.assertTrue(recorder.getDependencies("consumer2").contains("service4"));
+    Assert.assertTrue(recorder.getDependencies("service2").contains("service1"));
+    Assert.assertTrue(recorder.getDependencies("service4").contains("scopedTarget.service4"));
+  }
+
+  @Test
+  public void testExport() throws IOException {
+    final String json = Files.toString(GRAPH_FILE, Charsets.UTF_8);
+    Assert.assertTrue(json.contains("\"criticalPath\""));
+    Assert.assertTrue(json.contains("\"name\": \"service2\""));
+  }
+}
@@ -0,0 +1,147 @@
+package com.mymita.spring.test6;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.support.SimpleThreadScope;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext;
+import com.mymita.spring.FoobarContext.ContextType;
+import com.mymita.spring.FoobarContextHolder;
+import com.mymita.spring.FoobarImpl;
+import com.mymita.spring.FoobarService;
+import com.mymita.spring.FoobarServiceRouter;
+
+/**
+ * Test the {@link FoobarServiceRouter}: route to the primary <code>FOO</code> service and the only <code>BAR</code> service
+ * and to both groups.
+ */
+@ContextConfiguration(classes = {
+  AutowireTest6.TestConfiguration.class
+})
+public class AutowireTest6 extends AbstractTestNGSpringContextTests {
+
+  @Configuration
+  static class TestConfiguration {
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      scopes.put("foobarScope", new SimpleThreadScope());
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    FoobarServiceRouter router() {
+      return new FoobarServiceRouter();
+    }
+
+    @Bean
+    FoobarService service1() {
+      return new FoobarImpl().setName("1");
+    }
+
+    @Bean
+    @Primary
+    @FoobarContext(ContextType.FOO)
+    FoobarService service2() {
+      return new FoobarImpl().setName("2");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      return new FoobarImpl().setName("4");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.BAR)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.TARGET_CLASS)
+    FoobarService service6() {
+      return new FoobarImpl().setName("6");
+    }
+  }
+
+  @Autowired
+  FoobarServiceRouter router;
+  @Autowired
+  @Qualifier("service2")
+  FoobarService service2;
+  @Autowired
+  @Qualifier("service6")
+  FoobarService service6;
+  @Autowired
+  List<FoobarService> services;
+
+  @AfterMethod
+  public void resetContextType() {
+    FoobarContextHolder.reset();
+  }
+
+  @Test
+  public void testRoute() {
+    Assert.assertSame(router.route(ContextType.FOO), service2);
+    Assert.assertSame(router.route(ContextType.BAR), service6);
+  }
+
+  @Test
+  public void testRouteAll() {
+    Assert.assertEquals(router.routeAll(ContextType.FOO).size(), 2);
+    Assert.assertTrue(router.routeAll(ContextType.FOO).contains(service2));
+    Assert.assertEquals(router.routeAll(ContextType.BAR), Collections.singletonList(service6));
+  }
+
+  @Test
+  public void testCurrent() throws Exception {
+    FoobarContextHolder.set(ContextType.BAR);
+    Assert.assertSame(router.current(), service6);
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // the context type is bound to the thread
+      Assert.assertSame(executor.submit(new Callable<FoobarService>() {
+        @Override
+        public FoobarService call() {
+          FoobarContextHolder.set(ContextType.FOO);
+          return router.current();
+        }
+      }).get(), service2);
+    } finally {
+      executor.shutdown();
+    }
+    Assert.assertSame(router.current(), service6);
+  }
+
+  @Test
+  public void testRouterIsNoService() {
+    Assert.assertEquals(services.size(), 4);
+    for (final FoobarService service : services) {
+      Assert.assertFalse(service instanceof FoobarServiceRouter);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testNoCurrentContext() {
+    router.current();
+  }
+}
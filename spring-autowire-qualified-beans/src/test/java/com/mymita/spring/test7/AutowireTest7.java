@@ -0,0 +1,135 @@
+package com.mymita.spring.test7;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.support.SimpleThreadScope;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext;
+import com.mymita.spring.FoobarContext.ContextType;
+import com.mymita.spring.FoobarImpl;
+import com.mymita.spring.FoobarMetrics;
+import com.mymita.spring.FoobarService;
+import com.mymita.spring.FoobarServiceConsumer;
+import com.mymita.spring.FoobarServiceConsumerImpl;
+import com.mymita.spring.QualifiedBeanFactoryConfigurer;
+
+/**
+ * Test the {@link FoobarMetrics} of the monitored <code>foobarScope</code>, the scoped proxy <code>service4</code> and the
+ * <code>FOO</code> qualifier, read from the platform MBean server.
+ */
+@ContextConfiguration(classes = {
+  AutowireTest7.TestConfiguration.class
+})
+public class AutowireTest7 extends AbstractTestNGSpringContextTests {
+
+  @Configuration
+  static class TestConfiguration {
+
+    @Bean
+    static QualifiedBeanFactoryConfigurer qualifiedBeanFactoryConfigurer() {
+      return new QualifiedBeanFactoryConfigurer();
+    }
+
+    @Bean
+    static FoobarMetrics foobarMetrics() {
+      final FoobarMetrics metrics = new FoobarMetrics();
+      metrics.setScopes(Collections.singletonMap("foobarScope", new SimpleThreadScope()));
+      return metrics;
+    }
+
+    @Bean
+    @Qualifier("consumer2")
+    FoobarServiceConsumer consumer2(@FoobarContext(ContextType.FOO) final List<FoobarService> services) {
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    FoobarService service2() {
+      return new FoobarImpl().setName("2");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      return new FoobarImpl().setName("4");
+    }
+  }
+
+  private static long value(final Object tabularData, final String key) {
+    final CompositeData row = ((TabularData) tabularData).get(new Object[] {
+      key
+    });
+    return row == null ? 0 : (Long) row.get("value");
+  }
+
+  @Autowired
+  @Qualifier("service4")
+  FoobarService service4;
+  @Autowired
+  FoobarMetrics metrics;
+
+  @Test
+  public void testMetrics() throws JMException {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = metrics.getObjectName();
+    final long gets = value(server.getAttribute(name, "ScopeGets"), "service4");
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(service4.toString(), "Service 4");
+    }
+    Assert.assertEquals(value(server.getAttribute(name, "ScopeGets"), "service4"), gets + 3);
+    // the target is created once per thread
+    Assert.assertEquals(value(server.getAttribute(name, "LiveInstances"), "service4"), 1);
+    Assert.assertEquals(value(server.getAttribute(name, "ScopeMisses"), "service4"), 1);
+    Assert.assertTrue(value(server.getAttribute(name, "QualifierResolutions"), "FoobarContext(FOO)") >= 2);
+    final CompositeData latencies = ((TabularData) server.getAttribute(name, "TargetResolutionLatencies")).get(new Object[] {
+      "service4"
+    });
+    long resolutions = 0;
+    for (final long count : (long[]) latencies.get("value")) {
+      resolutions += count;
+    }
+    Assert.assertTrue(resolutions >= 3);
+  }
+
+  @Test
+  public void testMetricsPerContext() throws JMException {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final long gets = metrics.getScopeGets().get("service4");
+    final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+    final ObjectName name;
+    try {
+      final FoobarMetrics otherMetrics = context.getBean(FoobarMetrics.class);
+      name = otherMetrics.getObjectName();
+      Assert.assertNotEquals(name, metrics.getObjectName());
+      Assert.assertTrue(server.isRegistered(name));
+      context.getBean("service4", FoobarService.class).toString();
+      Assert.assertEquals(otherMetrics.getScopeGets().get("service4").longValue(), 1);
+      Assert.assertEquals(metrics.getScopeGets().get("service4").longValue(), gets);
+    } finally {
+      context.close();
+    }
+    Assert.assertFalse(server.isRegistered(name));
+    Assert.assertTrue(server.isRegistered(metrics.getObjectName()));
+  }
+}
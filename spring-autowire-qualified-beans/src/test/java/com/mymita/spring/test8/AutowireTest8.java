@@ -0,0 +1,178 @@
+package com.mymita.spring.test8;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.ImportResource;
+import org.springframework.context.support.SimpleThreadScope;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext;
+import com.mymita.spring.FoobarContext.ContextType;
+import com.mymita.spring.FoobarService;
+import com.mymita.spring.FoobarServiceConsumer;
+import com.mymita.spring.FoobarServiceConsumerImpl;
+import com.mymita.spring.StaxBeanDefinitionReader;
+
+/**
+ * Test the {@link StaxBeanDefinitionReader}: <code>services.xml</code> is imported by both configuration classes and by
+ * <code>services-stax.xml</code> but parsed only once.
+ */
+@ContextConfiguration(classes = {
+  AutowireTest8.TestConfiguration.class
+})
+public class AutowireTest8 extends AbstractTestNGSpringContextTests {
+
+  public static class RecordingStaxBeanDefinitionReader extends StaxBeanDefinitionReader {
+
+    static final List<String> PARSED = Collections.synchronizedList(new ArrayList<String>());
+
+    public RecordingStaxBeanDefinitionReader(final BeanDefinitionRegistry registry) {
+      super(registry);
+    }
+
+    /** resources this reader parses, it skips the resources already loaded by itself */
+    private final Set<Resource> loaded = new HashSet<Resource>();
+
+    @Override
+    public int loadBeanDefinitions(final Resource resource) {
+      if (loaded.add(resource)) {
+        PARSED.add(resource.getFilename());
+      }
+      return super.loadBeanDefinitions(resource);
+    }
+  }
+
+  public static class OtherRecordingStaxBeanDefinitionReader extends RecordingStaxBeanDefinitionReader {
+
+    public OtherRecordingStaxBeanDefinitionReader(final BeanDefinitionRegistry registry) {
+      super(registry);
+    }
+  }
+
+  @Configuration
+  @ImportResource(value = {
+    "/com/mymita/spring-autowire-qualified-beans/services.xml"
+  }, reader = RecordingStaxBeanDefinitionReader.class)
+  static class ServicesConfiguration {
+  }
+
+  @Configuration
+  @Import(ServicesConfiguration.class)
+  @ImportResource(value = {
+    "/com/mymita/spring-autowire-qualified-beans/services.xml"
+  }, reader = OtherRecordingStaxBeanDefinitionReader.class)
+  static class OtherReaderConfiguration {
+  }
+
+  @Configuration
+  @Import(ServicesConfiguration.class)
+  @ImportResource(value = {
+    "/com/mymita/spring-autowire-qualified-beans/services-stax.xml"
+  }, reader = RecordingStaxBeanDefinitionReader.class)
+  static class TestConfiguration {
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      scopes.put("foobarScope", new SimpleThreadScope());
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    @Qualifier("consumer1")
+    FoobarServiceConsumer consumer1(final List<FoobarService> services) {
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    @Qualifier("consumer2")
+    FoobarServiceConsumer consumer2(@FoobarContext final List<FoobarService> services) {
+      return new FoobarServiceConsumerImpl(services);
+    }
+
+    @Bean
+    @Qualifier("consumer3")
+    FoobarServiceConsumer consumer3(@FoobarContext(ContextType.BAR) final List<FoobarService> services) {
+      return new FoobarServiceConsumerImpl(services);
+    }
+  }
+
+  @Autowired
+  @Qualifier("consumer1")
+  FoobarServiceConsumer consumer1;
+  @Autowired
+  @Qualifier("consumer2")
+  FoobarServiceConsumer consumer2;
+  @Autowired
+  @Qualifier("consumer3")
+  FoobarServiceConsumer consumer3;
+
+  @Test
+  public void testAutowiredBeans() {
+    Assert.assertEquals(consumer1.getServices().size(), 7);
+  }
+
+  @Test
+  public void testAutowiredQualifiedBeansBar() {
+    Assert.assertEquals(consumer3.getServices().size(), 2);
+  }
+
+  @Test
+  public void testAutowiredQualifiedBeansFoo() {
+    Assert.assertEquals(consumer2.getServices().size(), 4);
+  }
+
+  @BeforeMethod
+  public void resetParsed() {
+    RecordingStaxBeanDefinitionReader.PARSED.clear();
+  }
+
+  @Test
+  public void testParsedOnce() {
+    final AnnotationConfigApplicationContext testContext = new AnnotationConfigApplicationContext(TestConfiguration.class);
+    try {
+      Assert.assertEquals(Collections.frequency(RecordingStaxBeanDefinitionReader.PARSED, "services.xml"), 1);
+      Assert.assertEquals(Collections.frequency(RecordingStaxBeanDefinitionReader.PARSED, "services-stax.xml"), 1);
+      Assert.assertSame(testContext.getBean("primaryFooService"), testContext.getBean("service2"));
+    } finally {
+      testContext.close();
+    }
+  }
+
+  @Test
+  public void testParsedOncePerReader() {
+    new AnnotationConfigApplicationContext(OtherReaderConfiguration.class).close();
+    Assert.assertEquals(Collections.frequency(RecordingStaxBeanDefinitionReader.PARSED, "services.xml"), 2);
+  }
+
+  @Test(expectedExceptions = BeanDefinitionStoreException.class, expectedExceptionsMessageRegExp = ".*<property> element for 'name'.*")
+  public void testPropertyWithoutValue() {
+    final String xml = "<beans xmlns=\"http://www.springframework.org/schema/beans\">"
+        + "<bean id=\"service\" class=\"com.mymita.spring.FoobarImpl\"><property name=\"name\"/></bean></beans>";
+    new StaxBeanDefinitionReader(new DefaultListableBeanFactory()).loadBeanDefinitions(new ByteArrayResource(xml.getBytes()));
+  }
+}
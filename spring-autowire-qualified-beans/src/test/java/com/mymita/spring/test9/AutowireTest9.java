@@ -0,0 +1,130 @@
+package com.mymita.spring.test9;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.support.SimpleThreadScope;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mymita.spring.FoobarContext;
+import com.mymita.spring.FoobarContext.ContextType;
+import com.mymita.spring.FoobarImpl;
+import com.mymita.spring.FoobarService;
+import com.mymita.spring.ScopedTargetWarmer;
+
+/**
+ * Test the {@link ScopedTargetWarmer}: only the <code>FOO</code> targets of the <code>foobarScope</code> are created on the worker
+ * threads before they run their tasks.
+ */
+@ContextConfiguration(classes = {
+  AutowireTest9.TestConfiguration.class
+})
+public class AutowireTest9 extends AbstractTestNGSpringContextTests {
+
+  @Configuration
+  static class TestConfiguration {
+
+    @Bean
+    static CustomScopeConfigurer customScopes() {
+      final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+      final Map<String, Object> scopes = new HashMap<String, Object>();
+      scopes.put("foobarScope", new SimpleThreadScope());
+      configurer.setScopes(scopes);
+      return configurer;
+    }
+
+    @Bean
+    ScopedTargetWarmer warmer() {
+      final ScopedTargetWarmer warmer = new ScopedTargetWarmer();
+      warmer.setScopeNames(Collections.singleton("foobarScope"));
+      warmer.setContextTypes(Collections.singleton(ContextType.FOO));
+      return warmer;
+    }
+
+    @Bean
+    @FoobarContext(ContextType.FOO)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.INTERFACES)
+    FoobarService service4() {
+      CREATED_ON.add("service4-" + Thread.currentThread().getName());
+      return new FoobarImpl().setName("4");
+    }
+
+    @Bean
+    @FoobarContext(ContextType.BAR)
+    @Scope(value = "foobarScope", proxyMode = ScopedProxyMode.TARGET_CLASS)
+    FoobarService service6() {
+      CREATED_ON.add("service6-" + Thread.currentThread().getName());
+      return new FoobarImpl().setName("6");
+    }
+  }
+
+  private static final Set<String> CREATED_ON = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  @Autowired
+  ScopedTargetWarmer warmer;
+  @Autowired
+  @Qualifier("service4")
+  FoobarService service4;
+
+  @BeforeMethod
+  public void clearCreated() {
+    CREATED_ON.clear();
+  }
+
+  @Test
+  public void testBeanNames() {
+    Assert.assertEquals(warmer.getBeanNames(), new String[] {
+      "scopedTarget.service4"
+    });
+  }
+
+  @Test
+  public void testWarmingThreadFactory() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor(warmer.warmingThreadFactory(Executors.defaultThreadFactory()));
+    try {
+      final String thread = executor.submit(new Callable<String>() {
+        @Override
+        public String call() {
+          // created before the task
+          Assert.assertTrue(CREATED_ON.contains("service4-" + Thread.currentThread().getName()));
+          Assert.assertEquals(service4.toString(), "Service 4");
+          return Thread.currentThread().getName();
+        }
+      }).get();
+      Assert.assertEquals(CREATED_ON, Collections.singleton("service4-" + thread));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testWarmExecutor() throws InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      Assert.assertEquals(warmer.warm(executor, 3), 3);
+      Assert.assertEquals(CREATED_ON.size(), 3, CREATED_ON.toString());
+      for (final String created : CREATED_ON) {
+        Assert.assertTrue(created.startsWith("service4-"), created);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}